@@ -0,0 +1,268 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/** Headless engine that runs scenarios at full CPU speed.
+ *  Instead of waiting for the driver's clock, it steps a scheduler
+ *  in a tight loop until it is done and reports, for every process,
+ *  the pulse it finished at along with its turnaround and wait time.
+ *
+ *  Usage: java BatchRunner [-q] [-e | -t] [-p POLICIES] [-c CORES [-b BALANCE]] [-s COST]
+ *                          [-sweep FROM:TO[:STEP] | -g WORKLOAD [-seed N]] [-cache] [-m] [-trace DIR]
+ *                          [scenario file]
+ *    -q only prints one summary line per scheduler run.
+ *    -e uses the event-driven EventSimulator instead of stepping every pulse.
+ *    -t uses the array-backed TableScheduler (fifo and rr policies only).
+ *    -p comma-separated policy names (see SchedulingPolicy.forName),
+ *       "fifo,rr" by default.
+ *    -c runs on a MultiCoreScheduler with that many cores.
+ *    -b global, stealing (default) or affinity load balancing.
+ *    -s pulses spent on every context switch, 0 by default.
+ *    -sweep instead runs Round Robin once per quantum from FROM to TO,
+ *       doubling or adding STEP, and prints the throughput/latency
+ *       trade-off of every quantum.
+ *    -g instead streams a generated workload through every policy without
+ *       keeping finished processes, and prints one summary line each:
+ *       poisson:COUNT:RATE:MEANSIZE[:SIZES] or
+ *       bursty:COUNT:RATE:MEANSIZE:MEANON:MEANOFF[:SIZES], where SIZES is
+ *       fixed, exponential (default) or pareto, and either may end in
+ *       +io:SHARE:MEANBURST:MEANIO to make that share of the processes do
+ *       I/O between CPU bursts. -seed picks the random seed.
+ *    -cache keeps a binary snapshot of the parsed scenario file next to
+ *       it (the file name plus ".cache") and reads that while it is current.
+ *    -trace records every run into that directory, one file per scenario
+ *       and policy (see TraceWriter and TraceReplay).
+ *    -m also writes the full Metrics of every run: the turnaround, response
+ *       and wait histograms and the number of ready processes over time. */
+public class BatchRunner{
+
+	/** The outcome of a single process in a finished run. */
+	public static class Result{
+		private final String name;
+		private final int total, arrival, completion;
+
+		private Result(Process p){
+			name = p.getName();
+			total = p.getTotal() + p.getIOTotal();
+			arrival = p.getArrival();
+			completion = p.getCompletionPulse();}
+
+		/** Gets the name of the process. */
+		public String getName(){return name;}
+
+		/** Gets the pulse at which the process finished. */
+		public int getCompletion(){return completion;}
+
+		/** Gets the pulse at which the process arrived. */
+		public int getArrival(){return arrival;}
+
+		/** Gets the pulses between arrival and completion. */
+		public int getTurnaround(){return completion - arrival;}
+
+		/** Gets the pulses spent in the ready queue or a device queue instead of being served. */
+		public int getWait(){return completion - arrival - total;}
+	}
+
+	private BatchRunner(){}
+
+	/** Steps the machine until it has no processes left.
+	 *  Returns the results of its processes in order of completion. */
+	public static List<Result> run(Machine s){
+		while (!s.isDone())
+			s.step();
+		List<Result> results = new ArrayList<>(s.getDoneQueue().size());
+		for (Process p: s.getDoneQueue())
+			results.add(new Result(p));
+		return results;
+	}
+
+	/** Builds the machine the command line asks for, running the named policy. */
+	static Machine machine(String policy, int cores, MultiCoreScheduler.Balance balance, boolean events, boolean table, int switchCost){
+		if (cores > 0) return new MultiCoreScheduler(cores, balance, () -> SchedulingPolicy.forName(policy), switchCost);
+		if (events) return new EventSimulator(SchedulingPolicy.forName(policy), switchCost);
+		if (table){
+			SchedulingPolicy p = SchedulingPolicy.forName(policy);
+			if (p instanceof FifoPolicy) return new TableScheduler(new ProcessTable(), 0, switchCost);
+			if (p instanceof RoundRobinPolicy) return new TableScheduler(new ProcessTable(), ((RoundRobinPolicy) p).getQuantum(), switchCost);
+			throw new IllegalArgumentException("-t only runs fifo and rr, not "+policy);}
+		return new Scheduler(SchedulingPolicy.forName(policy), switchCost);
+	}
+
+	/** Schedules a copy of the processes of a scenario: all at once unless some arrive later. */
+	static void load(Machine s, Process.Queue scenario){
+		Process.Queue processes = scenario.clone();
+		if (Workload.arrivesLater(scenario)) s.setWorkload(Workload.of(processes));
+		else s.scheduleAll(processes);
+	}
+
+	/** Starts recording a run into the directory, in a file named after the scenario and policy. */
+	private static TraceWriter trace(File dir, String scenario, String policy, int cores, MultiCoreScheduler.Balance balance, int switchCost){
+		File f = new File(dir, (scenario+"."+policy).replaceAll("[^\\w.-]+", "_")+".trace");
+		try {
+			dir.mkdirs();
+			return TraceWriter.create(f, scenario, policy, cores, cores > 0 ? balance : null, switchCost);}
+		catch (IOException e){System.err.println("Cannot write trace "+f+": "+e.getMessage());System.exit(1);return null;}
+	}
+
+	private static void close(TraceWriter trace){
+		try {trace.close();}
+		catch (IOException e){System.err.println("Cannot write trace: "+e.getMessage());System.exit(1);}
+	}
+
+	/** Runs a workload to the end without keeping finished processes and
+	 *  prints a summary line; memory stays bounded by the ready processes. */
+	private static void stream(PrintStream out, String spec, long seed, String policy, Machine s){
+		s.setKeepDone(false);
+		s.setWorkload(GeneratedWorkload.parse(spec, seed));
+		long start = System.nanoTime();
+		while (!s.isDone())
+			s.step();
+		long nanos = System.nanoTime() - start;
+		Metrics m = s.getMetrics();
+		out.printf("# %s [%s]: %d processes, %d pulses, mean turnaround %.1f, mean wait %.1f, %.0f processes/sec%n",
+				spec, policy, m.getCompleted(), s.getPulse(), m.getTurnaround().getMean(), m.getWait().getMean(),
+				m.getCompleted() / Math.max(nanos / 1e9, 1e-9));
+		summarize(out, m);
+		summarize(out, s.getDevices(), s.getPulse());
+	}
+
+	/** Prints one CSV row per process of a finished run. */
+	private static void print(PrintStream out, String scenario, String policy, List<Result> results){
+		for (Result r: results)
+			out.println(scenario+","+policy+","+r.getName().trim()+","+r.getCompletion()+","+r.getTurnaround()+","+r.getWait());
+	}
+
+	/** Prints the pulse count, throughput and averages of a finished run. */
+	private static void summarize(PrintStream out, String scenario, String policy, List<Result> results, int pulses, long nanos){
+		long turnaround = 0, wait = 0;
+		for (Result r: results){
+			turnaround += r.getTurnaround();
+			wait += r.getWait();}
+		int n = Math.max(results.size(), 1);
+		out.printf("# %s [%s]: %d processes, %d pulses, mean turnaround %.1f, mean wait %.1f, %.0f pulses/sec%n",
+				scenario, policy, results.size(), pulses, (double) turnaround/n, (double) wait/n,
+				pulses / Math.max(nanos / 1e9, 1e-9));
+	}
+
+	/** Prints the latency percentiles, utilization and context switches of a finished run. */
+	private static void summarize(PrintStream out, Metrics m){
+		out.printf("#   turnaround p50 %d, p99 %d, max %d; response mean %.1f, p99 %d; utilization %.3f, %d context switches%n",
+				m.getTurnaround().getPercentile(50), m.getTurnaround().getPercentile(99), m.getTurnaround().getMax(),
+				m.getResponse().getMean(), m.getResponse().getPercentile(99), m.getUtilization(), m.getContextSwitches());
+	}
+
+	/** Prints the utilization, bursts served and longest queue of every device used in a run. */
+	private static void summarize(PrintStream out, Devices devices, int pulses){
+		for (Devices.Device d: devices.getDevices())
+			out.printf("#   device %s: utilization %.3f, %d I/O bursts, longest queue %d%n",
+					d.getName(), d.getUtilization(pulses), d.getServed(), d.getMaxQueueLength());
+	}
+
+	/** Prints the utilization spread and migrations of a multi-core run. */
+	private static void summarize(PrintStream out, MultiCoreScheduler m){
+		double min = 1, max = 0, sum = 0;
+		for (int c=0; c < m.getCores(); c++){
+			double u = m.getUtilization(c);
+			min = Math.min(min, u);
+			max = Math.max(max, u);
+			sum += u;}
+		out.printf("#   %d cores (%s): utilization min %.3f, mean %.3f, max %.3f, %d migrations%n",
+				m.getCores(), m.getBalance().name().toLowerCase(), min, sum / m.getCores(), max, m.getMigrations());
+	}
+
+	/** Runs Round Robin over a range of quanta and prints one CSV row per quantum:
+	 *  throughput is processes finished per pulse, latency the mean turnaround. */
+	private static void sweep(PrintStream out, String scenario, Process.Queue processes, int from, int to, int step, int switchCost){
+		out.println("# quantum sweep of "+scenario+", "+switchCost+" pulses per context switch");
+		out.println("quantum,pulses,throughput,mean_turnaround,mean_wait,switches");
+		for (int q = from; q <= to; q = step > 0 ? q+step : q*2){
+			Scheduler s = new Scheduler(new RoundRobinPolicy(q), switchCost);
+			load(s, processes);
+			List<Result> results = run(s);
+			long turnaround = 0, wait = 0;
+			for (Result r: results){
+				turnaround += r.getTurnaround();
+				wait += r.getWait();}
+			int n = Math.max(results.size(), 1);
+			out.printf("%d,%d,%.6f,%.1f,%.1f,%d%n", q, s.getPulse(), (double) results.size() / s.getPulse(),
+					(double) turnaround/n, (double) wait/n, s.getCPU().getSwitches());
+			// Stop before the next quantum would pass TO, or overflow on the way
+			if (step > 0 ? q > to - step : q > to / 2) break;
+		}
+	}
+
+	/** Runs every scenario of the file under every requested policy. */
+	public static void main(String[] args){
+		boolean quiet = false, events = false, table = false, cache = false, metrics = false;
+		String[] policies = {"fifo", "rr"};
+		int cores = 0, switchCost = 0;
+		int[] sweep = null;
+		String generate = null;
+		long seed = 0;
+		MultiCoreScheduler.Balance balance = MultiCoreScheduler.Balance.STEALING;
+		File file = new File("scenarios"), traces = null;
+		for (int i=0; i < args.length; i++){
+			if (args[i].equals("-q")) quiet = true;
+			else if (args[i].equals("-e")) events = true;
+			else if (args[i].equals("-t")) table = true;
+			else if (args[i].equals("-cache")) cache = true;
+			else if (args[i].equals("-m")) metrics = true;
+			else if (args[i].equals("-trace") && i+1 < args.length) traces = new File(args[++i]);
+			else if (args[i].equals("-p") && i+1 < args.length) policies = args[++i].split(",");
+			else if (args[i].equals("-c") && i+1 < args.length) cores = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-b") && i+1 < args.length) balance = MultiCoreScheduler.Balance.valueOf(args[++i].toUpperCase());
+			else if (args[i].equals("-s") && i+1 < args.length) switchCost = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-sweep") && i+1 < args.length){
+				String[] range = args[++i].split(":");
+				sweep = new int[] {Integer.parseInt(range[0]), Integer.parseInt(range[range.length > 1 ? 1 : 0]),
+						range.length > 2 ? Integer.parseInt(range[2]) : 0};
+				if (sweep[0] < 1) throw new IllegalArgumentException("quanta must be positive");
+				if (sweep[2] < 0) throw new IllegalArgumentException("step must not be negative");}
+			else if (args[i].equals("-g") && i+1 < args.length) generate = args[++i];
+			else if (args[i].equals("-seed") && i+1 < args.length) seed = Long.parseLong(args[++i]);
+			else file = new File(args[i]);}
+
+		PrintStream out = System.out;
+		if (generate != null){
+			for (String name: policies){
+				Machine s = machine(name, cores, balance, events, table, switchCost);
+				stream(out, generate, seed, SchedulingPolicy.forName(name).getName(), s);
+				if (metrics) s.getMetrics().write(out);}
+			return;}
+
+		Map<String, Process.Queue> scenarios = null;
+		try {scenarios = cache ? ScenarioCache.read(file, new File(file.getPath()+".cache")) : ScenarioReader.read(file);}
+		catch(ParseException e){System.err.println("Malformed scenario file: "+e.getMessage());System.exit(1);}
+		catch(Exception e){System.err.println("Cannot read scenario file: "+e.getMessage());System.exit(1);}
+
+		if (sweep != null){
+			for (Map.Entry<String, Process.Queue> e: scenarios.entrySet())
+				sweep(out, e.getKey(), e.getValue(), sweep[0], sweep[1], sweep[2], switchCost);
+			return;}
+		if (!quiet) out.println("scenario,policy,process,completion,turnaround,wait");
+		for (Map.Entry<String, Process.Queue> e: scenarios.entrySet()){
+			for (String name: policies){
+				String policy = SchedulingPolicy.forName(name).getName();
+				Machine s = machine(name, cores, balance, events, table, switchCost);
+				load(s, e.getValue());
+				TraceWriter trace = traces == null ? null : trace(traces, e.getKey(), name, cores, balance, switchCost);
+				s.setListener(trace);
+				long start = System.nanoTime();
+				List<Result> results = run(s);
+				long nanos = System.nanoTime() - start;
+				if (trace != null) close(trace);
+				if (!quiet) print(out, e.getKey(), policy, results);
+				summarize(out, e.getKey(), policy, results, s.getPulse(), nanos);
+				summarize(out, s.getMetrics());
+				if (metrics) s.getMetrics().write(out);
+				summarize(out, s.getDevices(), s.getPulse());
+				if (s instanceof MultiCoreScheduler) summarize(out, (MultiCoreScheduler) s);
+			}
+		}
+	}
+}
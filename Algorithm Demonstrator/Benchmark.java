@@ -0,0 +1,319 @@
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+
+/** Micro-benchmarks of the simulation hot path: Process.Queue, Scheduler.step()
+ *  and scenario parsing, each over queue sizes from 10 to 10^7.
+ *
+ *  Every benchmark prepares its state for a size once, then times passes
+ *  over it; the untimed setup before each pass puts the state back (refills
+ *  a drained queue, rebuilds a finished scheduler). An iteration times as
+ *  many passes as fit in its time budget and scores nanoseconds per
+ *  operation; warm-up iterations let the JIT settle and are thrown away.
+ *  Results go into a volatile sink so no pass can be optimized away.
+ *
+ *  Usage: java -Xmx4g Benchmark [-sizes N,N,...] [-w WARMUPS] [-i ITERATIONS]
+ *                               [-ms MILLIS] [-csv] [PATTERN]
+ *    -sizes queue sizes, powers of ten from 10 to 10^7 by default.
+ *    -w and -i warm-up and measured iterations, 3 and 5 by default.
+ *    -ms time budget of an iteration, 200 by default.
+ *    -csv prints CSV instead of a table.
+ *    PATTERN only runs the benchmarks whose name it finds, such as "queue" or "rr".
+ *  Sizes that would not fit in half the heap are skipped; give the JVM more
+ *  with -Xmx to run them. */
+public class Benchmark{
+
+	private static final int MAX_STEPS = 1 << 20, REPEAT = 1000;
+
+	static volatile long sink;
+
+	/** One benchmark over a number of processes. */
+	private static abstract class Case{
+		private final String name, op;
+		private final int bytes;
+
+		/** Instantiates a benchmark scoring one op at a time that needs about
+		 *  the given heap per process. */
+		Case(String name, String op, int bytes){
+			this.name = name;
+			this.op = op;
+			this.bytes = bytes;}
+
+		/** Builds the state for n processes; not timed. */
+		abstract void prepare(int n) throws Exception;
+
+		/** Gets the state ready for the next pass; not timed. */
+		void setup() throws Exception{}
+
+		/** Runs a timed pass and returns the number of ops it performed. */
+		abstract long run() throws Exception;
+
+		/** Drops the state of the size. */
+		abstract void release();
+	}
+
+	private Benchmark(){}
+
+	/** Gets n processes of 1 to 20 instructions, the same ones every time. */
+	private static Process[] processes(int n){
+		Random random = new Random(n);
+		Process[] ps = new Process[n];
+		for (int i=0; i < n; i++)
+			ps[i] = new Process("p"+i, 1 + random.nextInt(20));
+		return ps;}
+
+	private static Process.Queue queue(int n){
+		Process.Queue q = new Process.Queue();
+		for (Process p: processes(n))
+			q.offer(p);
+		return q;}
+
+	/** Gets a scenario file of n processes as text. */
+	private static byte[] scenario(int n){
+		Random random = new Random(n);
+		StringBuilder b = new StringBuilder(n * 16).append("scenario Benchmark\n");
+		for (int i=0; i < n; i++)
+			b.append("process p").append(i).append(' ').append(1 + random.nextInt(20)).append('\n');
+		return b.toString().getBytes(StandardCharsets.US_ASCII);}
+
+	/** A scenario handler that only counts processes. */
+	private static class Counter implements ScenarioReader.Handler{
+		long processes;
+		public void scenario(String name){}
+		public void process(String name, int total, int arrival){processes++;}
+	}
+
+	/** Gets every benchmark, in the order they run. */
+	private static List<Case> cases(){
+		List<Case> cases = new ArrayList<>();
+
+		cases.add(new Case("queue.offer", "process", 150){
+			Process[] ps;
+			Process.Queue q;
+			void prepare(int n){ps = processes(n);}
+			void setup(){
+				if (q != null) while (q.poll() != null); // unlink them for the next pass
+				q = new Process.Queue();}
+			long run(){
+				for (Process p: ps)
+					q.offer(p);
+				return ps.length;}
+			void release(){ps = null;q = null;}
+		});
+
+		cases.add(new Case("queue.poll", "process", 150){
+			Process[] ps;
+			Process.Queue q = new Process.Queue();
+			void prepare(int n){ps = processes(n);}
+			void setup(){
+				for (Process p: ps)
+					q.offer(p);}
+			long run(){
+				long s = 0;
+				Process p;
+				while ((p = q.poll()) != null)
+					s += p.getTotal();
+				sink += s;
+				return ps.length;}
+			void release(){ps = null;}
+		});
+
+		cases.add(new Case("queue.takeAll", "call", 150){
+			Process.Queue a, b;
+			void prepare(int n){
+				a = queue(n);
+				b = new Process.Queue();}
+			long run(){
+				for (int i=0; i < REPEAT; i++){
+					b.takeAll(a);
+					a.takeAll(b);}
+				sink += a.size();
+				return 2*REPEAT;}
+			void release(){a = b = null;}
+		});
+
+		cases.add(new Case("queue.clone", "call", 160){
+			Process.Queue q;
+			void prepare(int n){
+				q = queue(n);
+				q.clone();} // takes the snapshot that later clones share
+			long run(){
+				long s = 0;
+				for (int i=0; i < REPEAT; i++)
+					s += q.clone().size();
+				sink += s;
+				return REPEAT;}
+			void release(){q = null;}
+		});
+
+		cases.add(new Case("queue.clone.snapshot", "process", 160){
+			Process.Queue q;
+			void prepare(int n){q = queue(n);}
+			void setup(){q.offer(q.poll());} // a change makes the next clone take a new snapshot
+			long run(){
+				sink += q.clone().size();
+				return q.size();}
+			void release(){q = null;}
+		});
+
+		cases.add(new Case("queue.clone.poll", "process", 300){
+			Process.Queue q, copy;
+			void prepare(int n){q = queue(n);}
+			void setup(){copy = q.clone();}
+			long run(){
+				long s = 0;
+				Process p;
+				while ((p = copy.poll()) != null)
+					s += p.getTotal();
+				sink += s;
+				return q.size();}
+			void release(){q = copy = null;}
+		});
+
+		cases.add(new Case("queue.iterator", "process", 150){
+			Process.Queue q;
+			void prepare(int n){q = queue(n);}
+			long run(){
+				long s = 0;
+				for (Process p: q)
+					s += p.getTotal();
+				sink += s;
+				return q.size();}
+			void release(){q = null;}
+		});
+
+		for (boolean rr: new boolean[] {false, true})
+			cases.add(new Case(rr ? "scheduler.rr.step" : "scheduler.fifo.step", "step", 300){
+				Process.Queue template;
+				Scheduler s;
+				void prepare(int n){template = queue(n);}
+				void setup(){
+					s = new Scheduler(rr);
+					s.setKeepDone(false);
+					s.scheduleAll(template.clone());}
+				long run(){
+					long steps = 0;
+					while (steps < MAX_STEPS && !s.isDone()){
+						s.step();
+						steps++;}
+					sink += s.getPulse();
+					return steps;}
+				void release(){template = null;s = null;}
+			});
+
+		cases.add(new Case("parse.stream", "process", 40){
+			byte[] text;
+			int n;
+			void prepare(int n){
+				text = scenario(n);
+				this.n = n;}
+			long run() throws Exception{
+				Counter c = new Counter();
+				ScenarioReader.parse(new ByteArrayInputStream(text), c);
+				sink += c.processes;
+				return n;}
+			void release(){text = null;}
+		});
+
+		cases.add(new Case("parse.read", "process", 200){
+			byte[] text;
+			int n;
+			void prepare(int n){
+				text = scenario(n);
+				this.n = n;}
+			long run() throws Exception{
+				ScenarioReader.Collector c = new ScenarioReader.Collector();
+				ScenarioReader.parse(new ByteArrayInputStream(text), c);
+				sink += c.getScenarios().size();
+				return n;}
+			void release(){text = null;}
+		});
+
+		cases.add(new Case("parse.cache", "process", 40){
+			File source, cache;
+			int n;
+			void prepare(int n) throws Exception{
+				this.n = n;
+				source = File.createTempFile("benchmark", ".scenarios");
+				cache = new File(source.getPath()+".cache");
+				try (OutputStream out = new FileOutputStream(source)){out.write(scenario(n));}
+				ScenarioCache.parse(source, cache, new Counter());} // writes the cache
+			long run() throws Exception{
+				Counter c = new Counter();
+				ScenarioCache.parse(source, cache, c);
+				sink += c.processes;
+				return n;}
+			void release(){
+				source.delete();
+				cache.delete();}
+		});
+
+		return cases;
+	}
+
+	/** Times one benchmark at one size and returns the score of every measured iteration. */
+	private static double[] measure(Case c, int n, int warmups, int iterations, long millis) throws Exception{
+		double[] scores = new double[iterations];
+		c.prepare(n);
+		try {
+			for (int i=0; i < warmups + iterations; i++){
+				long nanos = 0, ops = 0;
+				do {
+					c.setup();
+					long start = System.nanoTime();
+					ops += c.run();
+					nanos += System.nanoTime() - start;}
+				while (nanos < millis * 1_000_000);
+				if (i >= warmups) scores[i - warmups] = (double) nanos / ops;}
+		}
+		finally {c.release();}
+		return scores;
+	}
+
+	/** Runs the benchmarks the command line picks. */
+	public static void main(String[] args) throws Exception{
+		long[] sizes = {10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+		int warmups = 3, iterations = 5;
+		long millis = 200;
+		boolean csv = false;
+		Pattern filter = null;
+		for (int i=0; i < args.length; i++){
+			if (args[i].equals("-sizes") && i+1 < args.length) sizes = Arrays.stream(args[++i].split(",")).mapToLong(Long::parseLong).toArray();
+			else if (args[i].equals("-w") && i+1 < args.length) warmups = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-i") && i+1 < args.length) iterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-ms") && i+1 < args.length) millis = Long.parseLong(args[++i]);
+			else if (args[i].equals("-csv")) csv = true;
+			else filter = Pattern.compile(args[i]);}
+		if (iterations < 1) throw new IllegalArgumentException("need at least one measured iteration");
+
+		PrintStream out = System.out;
+		long heap = Runtime.getRuntime().maxMemory();
+		if (csv) out.println("benchmark,size,ns_per_op,error,op");
+		else out.printf("%-22s %10s %14s %10s  %s%n", "benchmark", "size", "ns/op", "error", "op");
+		for (Case c: cases()){
+			if (filter != null && !filter.matcher(c.name).find()) continue;
+			for (long size: sizes){
+				if (size < 1 || size > Integer.MAX_VALUE) throw new IllegalArgumentException("bad size "+size);
+				if (size * c.bytes > heap / 2){
+					if (!csv) out.printf("%-22s %10d %14s %10s  (needs about %d MB of heap)%n", c.name, size, "skipped", "", size * c.bytes * 2 >> 20);
+					continue;}
+				double[] scores = measure(c, (int) size, warmups, iterations, millis);
+				double mean = 0, variance = 0;
+				for (double s: scores) mean += s / scores.length;
+				for (double s: scores) variance += (s - mean) * (s - mean) / Math.max(scores.length - 1, 1);
+				if (csv) out.printf(Locale.ROOT, "%s,%d,%.3f,%.3f,%s%n", c.name, size, mean, Math.sqrt(variance), c.op);
+				else out.printf(Locale.ROOT, "%-22s %10d %14.3f %10.3f  %s%n", c.name, size, mean, Math.sqrt(variance), c.op);
+				System.gc();}
+		}
+	}
+}
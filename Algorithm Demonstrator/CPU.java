@@ -4,8 +4,18 @@ public class CPU {
 	/** The previous and active processes in the CPU. */
 	private Process active, previous;
 	
+	/** Pulses a context switch takes, pulses left of the current one, and switches so far. */
+	private final int switchCost;
+	private int stall;
+	private long switches;
+	
 	/** Instantiates a new CPU */
-	public CPU(){}
+	public CPU(){this(0);}
+	
+	/** Instantiates a new CPU that spends switchCost pulses on every context switch. */
+	public CPU(int switchCost){
+		if (switchCost < 0) throw new IllegalArgumentException("switchCost must not be negative");
+		this.switchCost = switchCost;}
 	
 	/** Checks if there is an active process in the CPU.
 	 * */
@@ -14,12 +24,28 @@ public class CPU {
 	/**Gets the active process of the CPU.* */
 	public Process getProcess(){return active;}
 	
-	/** Loads a new process into the CPU*/
-	public void load(Process p){
-		if (previous != null)
-			previous.updateProgressBar(false);
+	/** Gets the process that was loaded most recently, even if it
+	 *  has been unloaded since. Null if nothing was ever loaded. */
+	public Process getLastProcess(){return active != null ? active : previous;}
+	
+	/** Gets the pulses a context switch takes. */
+	public int getSwitchCost(){return switchCost;}
+	
+	/** Gets the pulses left of the context switch in progress. */
+	public int getPendingSwitch(){return stall;}
+	
+	/** Gets the number of context switches, i.e. loads of a process other than the last one. */
+	public long getSwitches(){return switches;}
+	
+	/** Loads a new process into the CPU. Unless it is the process that was
+	 *  just unloaded, this is a context switch and the next switchCost
+	 *  steps perform nothing. Returns whether it was a context switch. */
+	public boolean load(Process p){
 		active = p;
-		active.updateProgressBar(true);}
+		if (p == previous) return false;
+		switches++;
+		stall = switchCost;
+		return true;}
 	
 	/** Unload the active process of the CPU.*/
 	public Process unload(){
@@ -27,8 +53,22 @@ public class CPU {
 		active = null;
 		return previous;}
 	
-	/** Performs one instruction of the active process. */
-	public void step(){
+	/** Performs one instruction of the active process, or spends the pulse
+	 *  on a pending context switch. Returns whether an instruction was performed. */
+	public boolean step(){
+		if (stall > 0){
+			stall--;
+			return false;}
 		active.performInstruction();
-		active.updateProgressBar(true);}
+		return true;}
+	
+	/** Spends the given number of pulses at once, exactly as that many calls
+	 *  of step() would: first on a pending context switch, then on instructions.
+	 *  Returns the number of instructions performed. */
+	public int run(int pulses){
+		int switching = Math.min(stall, pulses);
+		stall -= switching;
+		int n = Math.min(pulses - switching, active.getBurstRemaining());
+		active.performInstructions(n);
+		return n;}
 }
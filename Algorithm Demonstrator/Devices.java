@@ -0,0 +1,112 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/** The I/O devices of a machine and the processes blocked on them. A
+ *  process that finishes a CPU burst waits in the queue of the device its
+ *  next I/O burst names; a device serves one process at a time, first come
+ *  first served, for as many pulses as the burst takes, then the process
+ *  is ready again. A process blocking at pulse t on an idle device is
+ *  served during pulses t+1 to t+length and ready from the pulse after,
+ *  just as a process arriving at pulse t is ready from pulse t+1.
+ *
+ *  Since service is first come first served and burst lengths are known,
+ *  the pulse a process will be done is fixed as soon as it blocks: the
+ *  devices keep those pulses in one heap and need no work per pulse.
+ *  Devices are made the first time a process names them. */
+public class Devices{
+
+	/** One device with its wait queue. */
+	public static class Device{
+		private final String name;
+		private final int index;
+		private final Process.Queue waiting = new Process.Queue();
+		private int freeAt, maxQueue;
+		private long busy, served;
+
+		private Device(String name, int index){
+			this.name = name;
+			this.index = index;}
+
+		/** Gets the name processes use for the device. */
+		public String getName(){return name;}
+
+		/** Gets the number of processes waiting for or being served by the device. */
+		public int getQueueLength(){return waiting.size();}
+
+		/** Gets the longest the queue has been. */
+		public int getMaxQueueLength(){return maxQueue;}
+
+		/** Gets the number of I/O bursts served to the end. */
+		public long getServed(){return served;}
+
+		/** Gets the pulses spent serving. A burst counts in full from the pulse
+		 *  its process blocks, so bursts still being served or still waiting in
+		 *  the queue are included; the count is exact once they are done. */
+		public long getBusy(){return busy;}
+
+		/** Gets the share of the given pulses the device was serving, counting
+		 *  bursts still being served or waiting in full, as getBusy() does. */
+		public double getUtilization(int pulses){return pulses == 0 ? 0 : Math.min(1, (double) busy / pulses);}
+	}
+
+	private final List<Device> devices = new ArrayList<>();
+	private final Map<String, Device> byName = new HashMap<>();
+	private final EventSimulator.EventQueue ends = new EventSimulator.EventQueue(); // last service pulse, tagged with the device
+	private int blocked;
+
+	/** Gets the device of the given name, making it if there is none. */
+	public Device get(String name){
+		Device d = byName.get(name);
+		if (d == null){
+			if (devices.size() > EventSimulator.EventQueue.TAG_MASK) throw new IllegalStateException("too many devices");
+			d = new Device(name, devices.size());
+			devices.add(d);
+			byName.put(name, d);}
+		return d;}
+
+	/** Gets every device, in the order they were first used. */
+	public List<Device> getDevices(){return Collections.unmodifiableList(devices);}
+
+	/** Gets the number of processes blocked on all devices. */
+	public int size(){return blocked;}
+
+	/** Checks if no process is blocked. */
+	public boolean isEmpty(){return blocked == 0;}
+
+	/** Queues a process that finished a CPU burst at the given pulse on the
+	 *  device of its I/O burst. Returns the last pulse of its service. */
+	public int block(Process p, int pulse){
+		if (!p.isBlocked()) throw new IllegalArgumentException(p.getName()+" has no I/O to do");
+		Device d = get(p.getDevice());
+		int length = p.getIOLength();
+		long end = (long) Math.max(pulse, d.freeAt) + length;
+		if (end > Integer.MAX_VALUE - 1) throw new IllegalStateException("pulse overflow: "+end);
+		d.freeAt = (int) end;
+		d.busy += length;
+		d.waiting.offer(p);
+		d.maxQueue = Math.max(d.maxQueue, d.waiting.size());
+		ends.offer(end, 0, d.index);
+		blocked++;
+		return (int) end;
+	}
+
+	/** Gets the first pulse from which a blocked process is ready again, or -1 if none is blocked. */
+	public int nextWake(){return ends.isEmpty() ? -1 : EventSimulator.EventQueue.time(ends.peek()) + 1;}
+
+	/** Removes and returns a process whose I/O was over before the given pulse,
+	 *  the one that was done first (on the device used first, if several were
+	 *  done on the same pulse); null if there is none. The process can run again. */
+	public Process wake(int pulse){
+		if (ends.isEmpty() || EventSimulator.EventQueue.time(ends.peek()) >= pulse) return null;
+		Device d = devices.get(EventSimulator.EventQueue.tag(ends.poll()));
+		Process p = d.waiting.poll();
+		d.served++;
+		blocked--;
+		p.finishIO();
+		return p;
+	}
+}
@@ -1,14 +1,16 @@
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
-import java.awt.GridLayout;
 import java.awt.Insets;
 import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import Process.Queue;
 
@@ -18,21 +20,48 @@ public class Driver{
 	/** GUI components  */
 	private JFrame frame;
 	private JPanel[] panels;
+	private JLabel[] stats;
 	private JMenuBar menuBar;
 	private JMenu load;
-	private JMenuItem run, pause;
+	private JMenuItem run, pause, finish;
+	private JComboBox<String> speedBox;
 	
 	/**
 	 * clockCP acts as the clock of our virtual systems.
-	 *  Calls pulse() method at regular intervals.
-	 * 
-	 *  Adjust PULSE_PER_SEC for your own machine. (50-1000 is a good range)
-	 *    Scenario "Few Large" should take around 20 seconds to complete.   
+	 *  Every tick delivers as many pulses as the chosen speed calls for, so the
+	 *  speed can change while running; at "Max" a tick runs pulses for up to
+	 *  MAX_TICK_NANOS. Either way the bars only redraw at frame rate.
+	 *    Scenario "Few Large" should take around 20 seconds at 100 pulses/s.
+	 *  "Finish" runs what is left off the event thread and shows the end state.
 	 */
-	private static final int PULSE_PER_SEC = 100;
+	private static final int TICKS_PER_SEC = 100;
+	private static final int[] SPEEDS = {10, 50, 100, 500, 1000, 10_000, 100_000, 0}; // pulses per second, 0 for max
+	private static final int DEFAULT_SPEED = 2;
+	private static final long MAX_TICK_NANOS = 8_000_000;
 	private Timer clockCP;
+	private int speed = SPEEDS[DEFAULT_SPEED];
+	private long owed; // pulses per second owed since the last whole pulse, times TICKS_PER_SEC
 	public static int pulseCt;
 	
+	/**
+	 * frameCP redraws the process bars from the state of the simulation.
+	 *  It is independent of clockCP, so the simulation itself never waits on Swing.
+	 *  The lists only paint the rows in view, so scenarios of any size stay smooth.
+	 */
+	private static final int FRAMES_PER_SEC = 30;
+	private Timer frameCP;
+	private ProcessListView[] lists = new ProcessListView[0];
+	private ProcessListView.Live[] live;
+	
+	/**
+	 * Both runs are recorded to traces as they go, so that while paused or done
+	 *  the timeline can scrub back and forth through them without simulating again.
+	 */
+	private TraceWriter[] traces;
+	private File[] traceFiles;
+	private TraceReplay[] replays;
+	private JSlider timeline;
+	
 	/** Scenarios */
 	private List<Scenario> scenarios;
 	private Scheduler[] schedulers;
@@ -69,20 +98,43 @@ public class Driver{
 	    run.addActionListener((ae)-> {
 	    	run.setEnabled(false);
 	    	pause.setEnabled(true);
-	    	clockCP.start();});
+	    	timeline.setEnabled(false);
+	    	showLive();
+	    	clockCP.start();
+	    	frameCP.start();});
 	    pause = new JMenuItem("Pause");
 	    pause.setPreferredSize(new Dimension(10,pause.getHeight()));
 	    pause.setEnabled(false);
 	    pause.addActionListener((ae)-> {
 	    	run.setEnabled(true);
 	    	pause.setEnabled(false);
-	    	clockCP.stop();});
+	    	clockCP.stop();
+	    	stopFrames();});
+	    finish = new JMenuItem("Finish");
+	    finish.setPreferredSize(new Dimension(10,finish.getHeight()));
+	    finish.setEnabled(false);
+	    finish.addActionListener((ae)->finish());
+	    
+	    // Create the speed control, which applies from the next tick
+	    String[] names = new String[SPEEDS.length];
+	    for (int i=0; i < SPEEDS.length; i++)
+	    	names[i] = SPEEDS[i] == 0 ? "Max" : String.format("%,d pulses/s", SPEEDS[i]);
+	    speedBox = new JComboBox<>(names);
+	    speedBox.setSelectedIndex(DEFAULT_SPEED);
+	    speedBox.setMaximumSize(speedBox.getPreferredSize());
+	    speedBox.addActionListener((ae)->{
+	    	speed = SPEEDS[speedBox.getSelectedIndex()];
+	    	owed = 0;});
 	    
 	    // Combine menu
 	  	menuBar = new JMenuBar();
 	  	menuBar.add(load);
 	  	menuBar.add(run);
 	  	menuBar.add(pause);
+	  	menuBar.add(finish);
+	  	menuBar.add(Box.createHorizontalGlue());
+	  	menuBar.add(new JLabel("Speed "));
+	  	menuBar.add(speedBox);
 		frame.setJMenuBar(menuBar);}
 	
 	
@@ -115,22 +167,164 @@ public class Driver{
 		c.gridx = 0; c.gridy = 1;c.insets = new Insets(0,0,0,0);
 		panels[0].add(panels[1], c);
 		c.gridx = 1;
-		panels[0].add(panels[2], c);}
+		panels[0].add(panels[2], c);
+		
+		// Create metrics lines below the processes
+		stats = new JLabel[2];
+		c.gridy = 2;c.insets = new Insets(4,2,4,2);
+		for (int i=0;i<2;i++){
+			stats[i] = new JLabel(" ");
+			stats[i].setHorizontalAlignment(JLabel.CENTER);
+			c.gridx = i;
+			panels[0].add(stats[i], c);}
+		
+		// Create the timeline, which scrubs through the recorded runs while paused
+		timeline = new JSlider(0, 0, 0);
+		timeline.setEnabled(false);
+		timeline.addChangeListener((ce)->scrub(timeline.getValue()));
+		c.gridx = 0; c.gridy = 3;c.gridwidth = 2;
+		panels[0].add(timeline, c);}
 	
 	
 	/** Triggered by the clock of our virtual systems.
-	 *  Delivers pulses to the schedulers which then load and unload
-	 *  processes in the CPU and cause it to execute an instruction.
+	 *  Delivers the pulses the speed calls for since the last tick. A tick that
+	 *  runs past its time budget drops the rest, so the GUI stays responsive.
 	 *  When the schedulers have no processes left it will stop. */
-	private void pulse(){
+	private void tick(){
+		long deadline = System.nanoTime() + MAX_TICK_NANOS;
+		long n = Long.MAX_VALUE;
+		if (speed > 0){
+			owed += speed;
+			n = owed / TICKS_PER_SEC;
+			owed -= n * TICKS_PER_SEC;}
+		for (long i=0; i < n; i++){
+			if (!pulse()){
+				stopped();
+				return;}
+			if ((i & 0xFF) == 0xFF && System.nanoTime() > deadline){
+				owed = 0;
+				return;}}
+	}
+	
+	/** Delivers a pulse to the schedulers which then load and unload
+	 *  processes in the CPU and cause it to execute an instruction.
+	 *  Returns false once the schedulers have no processes left. */
+	private boolean pulse(){
+		pulseCt++;
 		for (Scheduler s: schedulers)
 			if (!s.isDone())
 				s.step();
-		
-		if (schedulers[0].isDone() && schedulers[1].isDone()){
-			run.setEnabled(false);
-			pause.setEnabled(false);
-			clockCP.stop();}}
+		return !(schedulers[0].isDone() && schedulers[1].isDone());}
+	
+	/** Stops the clock for good once the schedulers are done. */
+	private void stopped(){
+		run.setEnabled(false);
+		pause.setEnabled(false);
+		finish.setEnabled(false);
+		clockCP.stop();
+		stopFrames();}
+	
+	/** Runs the rest of the simulation on a worker thread, with the clock,
+	 *  frames and controls off so nothing else touches the schedulers, then
+	 *  shows the final state. */
+	private void finish(){
+		clockCP.stop();
+		frameCP.stop();
+		run.setEnabled(false);
+		pause.setEnabled(false);
+		finish.setEnabled(false);
+		load.setEnabled(false);
+		timeline.setEnabled(false);
+		showLive();
+		new SwingWorker<Void, Integer>(){
+			@Override
+			protected Void doInBackground(){
+				int n = 0;
+				while (pulse())
+					if ((++n & 0xFFFF) == 0) publish(pulseCt);
+				return null;}
+			
+			@Override
+			protected void process(List<Integer> pulses){
+				frame.setTitle("Scheduler Simulation - finishing, pulse "+pulses.get(pulses.size()-1));}
+			
+			@Override
+			protected void done(){
+				frame.setTitle("Scheduler Simulation");
+				load.setEnabled(true);
+				try {get();}
+				catch(InterruptedException | ExecutionException e){warn("The simulation failed: "+e.getCause());}
+				stopFrames();}
+		}.execute();}
+	
+	/** Samples every process into its bar and the metrics of every scheduler into its line. */
+	private void sampleViews(){
+		for (ProcessListView l: lists)
+			l.sample();
+		for (int i=0; i < stats.length; i++){
+			Metrics m = schedulers[i].getMetrics();
+			stats[i].setText(String.format("<html>utilization %.0f%%, %d switches<br>turnaround p50 %d, p99 %d<br>response mean %.1f</html>",
+					100*m.getUtilization(), m.getContextSwitches(), m.getTurnaround().getPercentile(50),
+					m.getTurnaround().getPercentile(99), m.getResponse().getMean()));}}
+	
+	/** Stops redrawing, leaving the bars showing the latest state. */
+	private void stopFrames(){
+		frameCP.stop();
+		sampleViews();
+		openTimeline();}
+	
+	/** Starts recording both schedulers into new temporary traces. */
+	private void openTraces(String scenario){
+		closeTraces();
+		String[] policies = {"fifo", "rr"};
+		traces = new TraceWriter[2];
+		traceFiles = new File[2];
+		try {
+			for (int i=0; i < 2; i++){
+				traceFiles[i] = File.createTempFile("scheduler", ".trace");
+				traceFiles[i].deleteOnExit();
+				traces[i] = TraceWriter.create(traceFiles[i], scenario, policies[i], 0, null, 0);}
+		}
+		catch(IOException e){closeTraces();warn("Cannot record the run, the timeline is off: "+e.getMessage());}
+	}
+	
+	/** Stops recording and drops the traces of the last scenario. */
+	private void closeTraces(){
+		replays = null;
+		timeline.setEnabled(false);
+		if (traces == null) return;
+		for (int i=0; i < traces.length; i++){
+			try {if (traces[i] != null) traces[i].close();}
+			catch(IOException e){} // the file goes anyway
+			if (traceFiles[i] != null) traceFiles[i].delete();}
+		traces = null;}
+	
+	/** Reads back what has been recorded so far and lets the timeline scrub through it. */
+	private void openTimeline(){
+		if (traces == null) return;
+		try {
+			replays = new TraceReplay[traces.length];
+			for (int i=0; i < traces.length; i++){
+				traces[i].flush();
+				replays[i] = new TraceReplay(traceFiles[i]);}
+		}
+		catch(IOException e){replays = null;warn("Cannot read back the run: "+e.getMessage());return;}
+		timeline.setMaximum(pulseCt);
+		timeline.setValue(pulseCt);
+		timeline.setEnabled(true);}
+	
+	/** Shows every process as it was after the given pulse, as the traces recorded it. */
+	private void scrub(int pulse){
+		if (replays == null || !timeline.isEnabled()) return;
+		for (int i=0; i < lists.length; i++)
+			lists[i].setRows(new ProcessListView.Replayed(replays[i], pulse));
+	}
+	
+	/** Shows the processes as they are now again, after scrubbing. */
+	private void showLive(){
+		for (int i=0; i < lists.length; i++)
+			lists[i].setRows(live[i]);
+		sampleViews();}
 	
 	/** Container for various process queues linked with names. 
 	 *  We will keep these handy to quickly load various scenarios
@@ -144,25 +338,38 @@ public class Driver{
 		/** Load this scenario into the schedulers and resets state of the driver */
 		private void unpack(){
 			pulseCt=0;
+			owed=0;
     		run.setEnabled(true);
     		pause.setEnabled(false);
+    		finish.setEnabled(true);
     		
 			// Reset schedulers and load with processes of this scenario
     		schedulers = new Scheduler[] {new Scheduler(false), new Scheduler(true)};
-    		schedulers[0].scheduleAll(readyQueue.clone());
-    		schedulers[1].scheduleAll(readyQueue.clone());
 			
-			// Create GUI for schedulers and their processes
+			// Record both runs, numbering the processes in the order they are shown
+			openTraces(name);
+			
+			// Create GUI for schedulers and their processes, then hand the processes over
+			lists = new ProcessListView[2];
+			live = new ProcessListView.Live[2];
+			JScrollPane[] panes = new JScrollPane[2];
 			for (int i=1; i< 3; i++){
+				Process.Queue processes = readyQueue.clone();
+				live[i-1] = new ProcessListView.Live(processes.toArray(new Process[processes.size()]), schedulers[i-1].getCPU());
+				lists[i-1] = new ProcessListView(live[i-1]);
+				panes[i-1] = new JScrollPane(lists[i-1], JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED, JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
 				panels[i].removeAll();
-				panels[i].setLayout(new GridLayout(schedulers[0].getReadyQueue().size()+1,2));
-				for (Process p: schedulers[i-1].getReadyQueue()){
-					JLabel label = new JLabel(p.getName());
-					label.setHorizontalAlignment(JLabel.CENTER);
-					panels[i].add(label);
-					panels[i].add(p.getBar());
-				}
+				panels[i].setLayout(new BorderLayout());
+				panels[i].add(panes[i-1]);
+				if (traces != null){
+					for (Process p: processes)
+						traces[i-1].define(p);
+					schedulers[i-1].setListener(traces[i-1]);}
+				if (Workload.arrivesLater(processes)) schedulers[i-1].setWorkload(Workload.of(processes));
+				else schedulers[i-1].scheduleAll(processes);
 			}
+			panes[1].getVerticalScrollBar().setModel(panes[0].getVerticalScrollBar().getModel()); // both lists scroll together
+			sampleViews();
 			frame.add(panels[0]);
 			frame.pack();
 			frame.repaint();
@@ -171,42 +378,23 @@ public class Driver{
 	
 	/** Parses and instantiates all scenarios from scenario file. */
 	private void loadScenarios(){
-		try (Scanner s = new Scanner(new File("scenarios"))){
-			String str;
-			Scenario newestScenario = null;
-			scenarios = new ArrayList<>();
-			
-			// Read file
-			while (s.hasNextLine()){
-				str = s.nextLine();
-				
-				// Create new scenario at keyword: "scenario"
-				if (str.startsWith("scenario")){
-					if (newestScenario != null && newestScenario.readyQueue.isEmpty())
-						throw new ParseException("Cannot create scenario with no processes.",0);
-					else
-						scenarios.add(newestScenario = new Scenario(str.substring(9)));}
-				
-				// Create new process at keyword: "process"
-				else if (str.startsWith("process")){
-					String totalInsString = str.split(" ")[str.split(" ").length-1];
-					int totalIns;
-					if ((totalIns = Integer.decode(totalInsString)) < 1)
-						throw new ParseException("Cannot create process where totalInstructions = "+totalInsString,0);
-					String processName = str.substring(8, str.length()-totalInsString.length());
-					newestScenario.addProcess(new Process(processName,totalIns));
-				}
-			}
-			if (newestScenario.readyQueue.isEmpty())
-				throw new ParseException("Cannot create scenario with no processes.",0);
-			else if (scenarios.isEmpty())
-				throw new ParseException("No scenarios in file.",0);
+		scenarios = new ArrayList<>();
+		try {
+			for (Map.Entry<String, Process.Queue> e: ScenarioReader.read(new File("scenarios")).entrySet()){
+				Scenario newestScenario = new Scenario(e.getKey());
+				newestScenario.readyQueue.takeAll(e.getValue());
+				scenarios.add(newestScenario);}
 		}
-		catch(ParseException e){System.out.println("Malformed scenario file: "+e.getMessage());System.exit(1);}
-		catch(Exception e){System.out.println("\nUnexpected exception when reading scenario file...\n");e.printStackTrace();System.exit(1);}
-		clockCP = new Timer(1000/PULSE_PER_SEC, (ae)->{pulseCt++;pulse();});
+		catch(ParseException e){scenarios.clear();warn("Malformed scenario file, "+e.getMessage());}
+		catch(IOException e){scenarios.clear();warn("Cannot read scenario file: "+e.getMessage());}
+		clockCP = new Timer(1000/TICKS_PER_SEC, (ae)->tick());
+		frameCP = new Timer(1000/FRAMES_PER_SEC, (ae)->sampleViews());
 	}
 	
+	/** Tells the user something went wrong; the driver carries on without scenarios. */
+	private static void warn(String message){
+		JOptionPane.showMessageDialog(null, message, "Scheduler Simulation", JOptionPane.ERROR_MESSAGE);}
+	
 	/** The main method to create a new driver. */
 	public static void main(String[] args){
 		new Driver();
@@ -0,0 +1,219 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+
+/** Discrete-event counterpart of Scheduler. Instead of performing one
+ *  instruction per pulse it keeps a priority queue of the pulses at which
+ *  something can happen (a completion, the end of a quantum or any other
+ *  preemption the policy may decide on, or the arrival of the next process
+ *  of the workload) and jumps straight to the next one, letting the CPU
+ *  perform all the instructions in between at once. Blocked processes wake
+ *  at pulses the devices already know, so these are events too. When
+ *  nothing is ready it skips the idle pulses up to the next arrival or wake.
+ *
+ *  For the same policy, switch cost and processes it loads, unloads and
+ *  completes every process at exactly the same pulses as Scheduler.step(),
+ *  in O(events log events) time. How far it can jump is up to the policy's
+ *  runLength; policies that keep the default of 1 are simulated correctly
+ *  but no faster than pulse by pulse. */
+public class EventSimulator implements Machine{
+
+	/** Event kinds; events on the same pulse are handled in this order. */
+	private static final int ARRIVAL = 0, CPU_DECISION = 1;
+
+	private final CPU cpu;
+	private final SchedulingPolicy policy;
+	private final Process.Queue done = new Process.Queue();
+	private final EventQueue events = new EventQueue();
+	private int pulse, slice, version, arrivals;
+	private long handled;
+	private SchedulerListener listener;
+	private final Metrics metrics = new Metrics(1);
+	private final Devices devices = new Devices();
+	private Workload workload;
+	private Process upcoming;
+	private boolean keepDone = true;
+
+	/** Instantiates a simulator that asks the given policy what to run. */
+	public EventSimulator(SchedulingPolicy p){this(p, 0);}
+
+	/** Instantiates a simulator whose CPU spends switchCost pulses per context switch. */
+	public EventSimulator(SchedulingPolicy p, int switchCost){
+		if (p == null) throw new NullPointerException("policy must not be null");
+		cpu = new CPU(switchCost);
+		policy = p;}
+
+	public void schedule(Process p){policy.offer(p, pulse);}
+
+	public void scheduleAll(Process.Queue pq){policy.offerAll(pq, pulse);}
+
+	public void setWorkload(Workload w){
+		workload = w;
+		upcoming = w == null ? null : w.next();
+		if (upcoming != null) events.offer(Math.max(upcoming.getArrival(), pulse)+1, ARRIVAL, ++arrivals);}
+
+	public void setKeepDone(boolean keep){keepDone = keep;}
+
+	/** Gets the scheduling policy, which holds the ready processes. */
+	public SchedulingPolicy getPolicy(){return policy;}
+
+	public Process.Queue getDoneQueue(){return done;}
+
+	/** Gets the CPU. */
+	public CPU getCPU(){return cpu;}
+
+	public void setListener(SchedulerListener l){listener = l;}
+
+	public Metrics getMetrics(){return metrics;}
+
+	public Devices getDevices(){return devices;}
+
+	/** Gets the pulse of the last event handled. */
+	public int getPulse(){return pulse;}
+
+	/** Gets the number of events handled so far. */
+	public long getEvents(){return handled;}
+
+	public boolean isDone(){return upcoming == null && policy.isEmpty() && !cpu.hasProcess() && devices.isEmpty();}
+
+	/** Offers every process of the workload that is ready by the given pulse
+	 *  to the policy, then queues the pulse the next one will be ready; then
+	 *  offers every process whose I/O was over by then. */
+	private void admit(int now){
+		if (upcoming != null && upcoming.getArrival() < now){
+			do {
+				policy.offer(upcoming, now);
+				upcoming = workload.next();}
+			while (upcoming != null && upcoming.getArrival() < now);
+			if (upcoming != null) events.offer(upcoming.getArrival()+1, ARRIVAL, ++arrivals);}
+		Process p;
+		while ((p = devices.wake(now)) != null)
+			policy.wake(p, now);
+	}
+
+	/** Checks if an event is still current: a newer decision or arrival replaces older ones. */
+	private boolean isCurrent(long e){
+		int tag = EventQueue.kind(e) == ARRIVAL ? arrivals : version;
+		return EventQueue.tag(e) == (tag & EventQueue.TAG_MASK);}
+
+	/** Queues the next pulse at which the running process needs a decision:
+	 *  after a pending context switch, the earlier of its completion and the
+	 *  point the policy may preempt it. Earlier decision events become stale. */
+	private void decide(){
+		Process p = cpu.getProcess();
+		int switching = cpu.getPendingSwitch();
+		int k = Math.min(p.getBurstRemaining(), policy.runLength(p, slice, pulse + switching));
+		events.offer((long) pulse + switching + k, CPU_DECISION, ++version);}
+
+	/** Handles the next event, loading a process first if the CPU is idle. */
+	public void step(){
+		if (!cpu.hasProcess()){
+			admit(pulse+1);
+			if (policy.isEmpty()){
+				if (upcoming == null && devices.isEmpty()) return; //nothing is ready or coming
+				int next = upcoming == null ? Integer.MAX_VALUE : upcoming.getArrival();
+				if (!devices.isEmpty()) next = Math.min(next, devices.nextWake()-1);
+				pulse = Math.max(pulse, next); //idle until something is ready
+				admit(pulse+1);}
+			metrics.queue(pulse+1, policy.size());
+			Process next = policy.poll(pulse+1); //never empty here
+			if (next == null) return; //nothing is ready
+			if (cpu.load(next)) metrics.switched();
+			if (next.getFinished() == 0) metrics.started(next.getArrival(), pulse+1);
+			metrics.queue(pulse+2, policy.size());
+			slice = 0;
+			if (listener != null) listener.loaded(next, pulse+1);
+			decide();}
+
+		long e;
+		while (!isCurrent(e = events.peek()))
+			events.poll();
+		handled++;
+
+		int time = EventQueue.time(e), wake = devices.nextWake();
+		if (wake >= 0 && wake <= time || EventQueue.kind(e) == ARRIVAL){
+			// Run the CPU up to the arrival or wake pulse, after which Scheduler.step()
+			// admits the process, and decide again with the new process in the running
+			if (wake >= 0 && wake <= time) time = wake; //a wake comes first, e stays queued
+			else events.poll();
+			int n = cpu.run(time-1 - pulse);
+			slice += n;
+			metrics.executed(n);
+			pulse = time-1;
+			metrics.pulse(pulse);
+			admit(pulse+1);
+			metrics.queue(pulse+1, policy.size());
+			decide();
+			return;}
+
+		// Run the CPU up to the decision pulse, then decide as Scheduler.step() would
+		events.poll();
+		int n = cpu.run(time - pulse);
+		slice += n;
+		metrics.executed(n);
+		pulse = time;
+		metrics.pulse(pulse);
+		Process p = cpu.getProcess();
+		if (p.isDone()){
+			cpu.unload();
+			p.complete(pulse);
+			metrics.completed(p.getArrival(), p.getTotal() + p.getIOTotal(), pulse);
+			if (keepDone) done.offer(p);
+			if (listener != null) listener.completed(p, pulse);}
+		else if (p.isBlocked()){
+			cpu.unload();
+			policy.block(p, slice, pulse);
+			devices.block(p, pulse);
+			if (listener != null) listener.blocked(p, pulse);}
+		else if (policy.preempt(p, slice, pulse)){
+			cpu.unload();
+			policy.requeue(p, slice, pulse);
+			metrics.queue(pulse+1, policy.size());
+			if (listener != null) listener.unloaded(p, pulse);}
+		else decide();
+	}
+
+	/** A binary min-heap of events packed into longs: the pulse in the
+	 *  high 32 bits, then an 8-bit kind and a 24-bit tag. */
+	static class EventQueue{
+		static final int TAG_MASK = 0xFFFFFF;
+
+		private long[] heap = new long[16];
+		private int size;
+
+		static int time(long e){return (int) (e >>> 32);}
+		static int kind(long e){return (int) (e >>> 24) & 0xFF;}
+		static int tag(long e){return (int) e & TAG_MASK;}
+
+		boolean isEmpty(){return size == 0;}
+
+		int size(){return size;}
+
+		void offer(long time, int kind, int tag){
+			if (time < 0 || time > Integer.MAX_VALUE) throw new IllegalStateException("pulse overflow: "+time);
+			long e = time << 32 | (long) kind << 24 | (tag & TAG_MASK);
+			if (size == heap.length) heap = Arrays.copyOf(heap, size*2);
+			int i = size++;
+			while (i > 0 && heap[(i-1)/2] > e){
+				heap[i] = heap[(i-1)/2];
+				i = (i-1)/2;}
+			heap[i] = e;}
+
+		long peek(){
+			if (size == 0) throw new NoSuchElementException("no events");
+			return heap[0];}
+
+		long poll(){
+			long top = peek();
+			long e = heap[--size];
+			int i = 0;
+			while (2*i+1 < size){
+				int c = 2*i+1;
+				if (c+1 < size && heap[c+1] < heap[c]) c++;
+				if (heap[c] >= e) break;
+				heap[i] = heap[c];
+				i = c;}
+			heap[i] = e;
+			return top;}
+	}
+}
@@ -0,0 +1,224 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+/** Runs the cross product of scenarios, policies, quanta and core counts
+ *  in parallel and reports one summary row per run as CSV or JSON.
+ *
+ *  Every run is an independent simulation on its own copy of the scenario,
+ *  so runs go to a fork-join pool with one worker per processor by default.
+ *  Copies are made on the calling thread (Process.Queue.clone() is O(1)
+ *  but not thread-safe), the workers only read the shared snapshot. The
+ *  report lists runs in the order of the cross product, whatever order
+ *  they finish in.
+ *
+ *  Usage: java ExperimentRunner [-p POLICIES] [-q QUANTA] [-c CORES] [-b BALANCE]
+ *                               [-s COST] [-e] [-threads N] [-json] [-o FILE] [FILE|DIR ...]
+ *    -p comma-separated policy names (see SchedulingPolicy.forName),
+ *       all eight policies by default.
+ *    -q comma-separated quanta, tried with every policy that takes one
+ *       (rr, lottery, mlfq and cfs) unless its name already sets it.
+ *    -c comma-separated core counts; 1 is the single-CPU Scheduler, the
+ *       default, more is a MultiCoreScheduler balanced by -b.
+ *    -s pulses spent on every context switch, 0 by default.
+ *    -e uses the EventSimulator for single-CPU runs.
+ *    -threads size of the pool, the number of processors by default.
+ *    -json writes a JSON array instead of CSV; -o writes to a file.
+ *  Scenario files are read whole; a directory stands for every file in it.
+ *  With none given, the file "scenarios" is used. */
+public class ExperimentRunner{
+
+	/** Policies whose ":N" parameter is a time slice. */
+	private static final List<String> QUANTUM_POLICIES = Arrays.asList("rr", "lottery", "mlfq", "cfs");
+
+	/** The summary of one simulation. */
+	public static class Run{
+		private final String scenario, policy;
+		private final int cores;
+		private Metrics metrics;
+		private long nanos;
+
+		private Run(String scenario, String policy, int cores){
+			this.scenario = scenario;
+			this.policy = policy;
+			this.cores = cores;}
+
+		/** Gets the name of the scenario, prefixed by its file. */
+		public String getScenario(){return scenario;}
+
+		/** Gets the short policy name, with its parameter if it has one. */
+		public String getPolicy(){return policy;}
+
+		/** Gets the number of cores. */
+		public int getCores(){return cores;}
+
+		/** Gets the pulses the run took. */
+		public int getPulses(){return metrics.getPulse();}
+
+		/** Gets the measurements of the run. */
+		public Metrics getMetrics(){return metrics;}
+	}
+
+	private ExperimentRunner(){}
+
+	/** Simulates a scenario copy on a new machine and fills in the run. */
+	private static Run simulate(Run run, Process.Queue processes, boolean later, MultiCoreScheduler.Balance balance, boolean events, int switchCost){
+		Machine m = BatchRunner.machine(run.policy, run.cores > 1 ? run.cores : 0, balance, events, false, switchCost);
+		m.setKeepDone(false);
+		if (later) m.setWorkload(Workload.of(processes));
+		else m.scheduleAll(processes);
+		long start = System.nanoTime();
+		while (!m.isDone())
+			m.step();
+		run.nanos = System.nanoTime() - start;
+		run.metrics = m.getMetrics();
+		return run;
+	}
+
+	/** Expands the policy names by the quanta. */
+	private static List<String> expand(String[] policies, int[] quanta){
+		List<String> names = new ArrayList<>();
+		for (String p: policies){
+			if (quanta.length == 0 || p.indexOf(':') >= 0 || !QUANTUM_POLICIES.contains(p.toLowerCase())) names.add(p);
+			else for (int q: quanta) names.add(p+":"+q);}
+		for (String name: names)
+			SchedulingPolicy.forName(name); // reject unknown names before anything runs
+		return names;
+	}
+
+	/** Reads the scenarios of every file, prefixing their names with the file's. */
+	private static Map<String, Process.Queue> read(List<File> files, Map<String, Process.Queue> into) throws Exception{
+		for (File f: files){
+			if (f.isDirectory()){
+				File[] inside = f.listFiles(File::isFile);
+				if (inside == null) throw new FileNotFoundException(f.getPath());
+				Arrays.sort(inside);
+				read(Arrays.asList(inside), into);
+				continue;}
+			try {
+				for (Map.Entry<String, Process.Queue> e: ScenarioReader.read(f).entrySet())
+					into.put(f.getName()+":"+e.getKey(), e.getValue());}
+			catch (ParseException e){throw new ParseException(f+", "+e.getMessage(), e.getErrorOffset());}
+		}
+		return into;
+	}
+
+	private static String quote(String s){
+		StringBuilder b = new StringBuilder("\"");
+		for (char c: s.toCharArray()){
+			if (c == '"' || c == '\\') b.append('\\').append(c);
+			else if (c < 0x20) b.append(String.format("\\u%04x", (int) c));
+			else b.append(c);}
+		return b.append('"').toString();
+	}
+
+	private static String csv(String s){
+		return s.indexOf(',') < 0 && s.indexOf('"') < 0 ? s : "\""+s.replace("\"", "\"\"")+"\"";}
+
+	/** Writes the runs as CSV with a header line. */
+	private static void writeCSV(PrintStream out, List<Run> runs){
+		out.println("scenario,policy,cores,processes,pulses,throughput,utilization,switches,"
+				+"mean_turnaround,p50_turnaround,p99_turnaround,max_turnaround,mean_response,p99_response,mean_wait,millis");
+		for (Run r: runs){
+			Metrics m = r.metrics;
+			Histogram t = m.getTurnaround();
+			out.printf(Locale.ROOT, "%s,%s,%d,%d,%d,%.6f,%.4f,%d,%.2f,%d,%d,%d,%.2f,%d,%.2f,%.3f%n", csv(r.scenario), csv(r.policy), r.cores,
+					m.getCompleted(), m.getPulse(), m.getThroughput(), m.getUtilization(), m.getContextSwitches(),
+					t.getMean(), t.getPercentile(50), t.getPercentile(99), t.getMax(),
+					m.getResponse().getMean(), m.getResponse().getPercentile(99), m.getWait().getMean(), r.nanos / 1e6);}
+	}
+
+	/** Writes the runs as a JSON array of objects. */
+	private static void writeJSON(PrintStream out, List<Run> runs){
+		out.println("[");
+		for (int i=0; i < runs.size(); i++){
+			Run r = runs.get(i);
+			Metrics m = r.metrics;
+			Histogram t = m.getTurnaround();
+			out.printf(Locale.ROOT, "  {\"scenario\": %s, \"policy\": %s, \"cores\": %d, \"processes\": %d, \"pulses\": %d, "
+					+"\"throughput\": %.6f, \"utilization\": %.4f, \"switches\": %d, \"mean_turnaround\": %.2f, "
+					+"\"p50_turnaround\": %d, \"p99_turnaround\": %d, \"max_turnaround\": %d, \"mean_response\": %.2f, "
+					+"\"p99_response\": %d, \"mean_wait\": %.2f, \"millis\": %.3f}%s%n",
+					quote(r.scenario), quote(r.policy), r.cores, m.getCompleted(), m.getPulse(), m.getThroughput(),
+					m.getUtilization(), m.getContextSwitches(), t.getMean(), t.getPercentile(50), t.getPercentile(99), t.getMax(),
+					m.getResponse().getMean(), m.getResponse().getPercentile(99), m.getWait().getMean(), r.nanos / 1e6,
+					i+1 < runs.size() ? "," : "");}
+		out.println("]");
+	}
+
+	private static int[] ints(String list){
+		return Arrays.stream(list.split(",")).mapToInt(Integer::parseInt).toArray();}
+
+	/** Runs the experiment the command line describes. */
+	public static void main(String[] args) throws Exception{
+		String[] policies = {"fifo", "rr", "sjf", "srtf", "priority", "mlfq", "lottery", "cfs"};
+		int[] quanta = {}, cores = {1};
+		int switchCost = 0, threads = Runtime.getRuntime().availableProcessors();
+		boolean events = false, json = false;
+		MultiCoreScheduler.Balance balance = MultiCoreScheduler.Balance.STEALING;
+		File output = null;
+		List<File> files = new ArrayList<>();
+		for (int i=0; i < args.length; i++){
+			if (args[i].equals("-p") && i+1 < args.length) policies = args[++i].split(",");
+			else if (args[i].equals("-q") && i+1 < args.length) quanta = ints(args[++i]);
+			else if (args[i].equals("-c") && i+1 < args.length) cores = ints(args[++i]);
+			else if (args[i].equals("-b") && i+1 < args.length) balance = MultiCoreScheduler.Balance.valueOf(args[++i].toUpperCase());
+			else if (args[i].equals("-s") && i+1 < args.length) switchCost = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-threads") && i+1 < args.length) threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-o") && i+1 < args.length) output = new File(args[++i]);
+			else if (args[i].equals("-e")) events = true;
+			else if (args[i].equals("-json")) json = true;
+			else files.add(new File(args[i]));}
+		if (files.isEmpty()) files.add(new File("scenarios"));
+
+		Map<String, Process.Queue> scenarios;
+		try {scenarios = read(files, new LinkedHashMap<>());}
+		catch(ParseException e){System.err.println("Malformed scenario file: "+e.getMessage());System.exit(1);return;}
+		catch(Exception e){System.err.println("Cannot read scenario file: "+e.getMessage());System.exit(1);return;}
+		List<String> names = expand(policies, quanta);
+		for (int c: cores)
+			if (c < 1) throw new IllegalArgumentException("core counts must be positive");
+
+		// Submit the cross product, copying every scenario here on the calling thread
+		final boolean ev = events;
+		final int cost = switchCost;
+		final MultiCoreScheduler.Balance b = balance;
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		List<Future<Run>> futures = new ArrayList<>();
+		long start = System.nanoTime();
+		for (Map.Entry<String, Process.Queue> e: scenarios.entrySet()){
+			boolean later = Workload.arrivesLater(e.getValue());
+			for (String name: names)
+				for (int c: cores){
+					Run run = new Run(e.getKey(), name, c);
+					Process.Queue copy = e.getValue().clone();
+					futures.add(pool.submit(() -> simulate(run, copy, later, b, ev, cost)));}
+		}
+		List<Run> runs = new ArrayList<>(futures.size());
+		try {
+			for (Future<Run> f: futures)
+				runs.add(f.get());}
+		catch (ExecutionException e){
+			pool.shutdownNow();
+			throw e;}
+		pool.shutdown();
+		long nanos = System.nanoTime() - start;
+
+		PrintStream out = output == null ? System.out : new PrintStream(output);
+		if (json) writeJSON(out, runs);
+		else writeCSV(out, runs);
+		if (output != null) out.close();
+		System.err.printf("%d runs of %d scenarios on %d threads in %.2f s%n", runs.size(), scenarios.size(), threads, nanos / 1e9);
+	}
+}
@@ -0,0 +1,80 @@
+import java.util.TreeSet;
+
+
+/** Completely-fair style scheduling. Every process accumulates virtual
+ *  runtime while it runs, faster for less important processes, and the
+ *  process with the least virtual runtime runs next. The running process
+ *  is unloaded once it is more than granularity pulses (at priority 0)
+ *  ahead of the least one waiting. Ready processes sit in a red-black
+ *  tree ordered by virtual runtime. */
+public class FairSharePolicy implements SchedulingPolicy{
+
+	/** Load weight per priority, -20 to 19; each step is about 10% of CPU. */
+	private static final int[] WEIGHTS = {
+		88761, 71755, 56483, 46273, 36291,
+		29154, 23254, 18705, 14949, 11916,
+		 9548,  7620,  6100,  4904,  3906,
+		 3121,  2501,  1991,  1586,  1277,
+		 1024,   820,   655,   526,   423,
+		  335,   272,   215,   172,   137,
+		  110,    87,    70,    56,    45,
+		   36,    29,    23,    18,    15};
+
+	/** Gets the load weight of a priority; 1024 at priority 0. */
+	static int weight(int priority){return WEIGHTS[priority+20];}
+
+	/** Gets the virtual runtime charged per instruction at a priority. */
+	private static long cost(int priority){return (1024L << 16) / weight(priority);}
+
+	private final long granularity;
+	private final TreeSet<Process> ready = new TreeSet<>((a, b) -> {
+		int c = Long.compare(a.schedKey, b.schedKey);
+		return c != 0 ? c : Long.compare(a.schedSeq, b.schedSeq);});
+	private long minVruntime, arrivals;
+
+	/** Instantiates a policy with a granularity of 3 pulses. */
+	public FairSharePolicy(){this(3);}
+
+	/** Instantiates a policy that lets a process run granularity pulses past its fair share. */
+	public FairSharePolicy(int granularity){
+		if (granularity < 1) throw new IllegalArgumentException("granularity must be positive");
+		this.granularity = granularity * cost(0);}
+
+	/** Places a process on the tree; newcomers start at the current minimum
+	 *  virtual runtime instead of getting credit for time they were absent. */
+	public void offer(Process p, int pulse){
+		if (p.schedKey < minVruntime) p.schedKey = minVruntime;
+		p.schedSeq = arrivals++;
+		ready.add(p);}
+
+	public Process poll(int pulse){
+		Process p = ready.pollFirst();
+		if (p != null && p.schedKey > minVruntime) minVruntime = p.schedKey;
+		return p;}
+
+	public boolean preempt(Process running, int slice, int pulse){
+		if (ready.isEmpty()) return false;
+		return running.schedKey + slice * cost(running.getPriority()) > ready.first().schedKey + granularity;}
+
+	/** Solves running.schedKey + (slice+k) * cost > first + granularity for the least k. */
+	@Override
+	public int runLength(Process running, int slice, int pulse){
+		if (ready.isEmpty()) return Integer.MAX_VALUE;
+		long d = ready.first().schedKey + granularity - running.schedKey;
+		if (d < 0) return 1;
+		long k = d / cost(running.getPriority()) + 1 - slice;
+		return (int) Math.max(1, Math.min(k, Integer.MAX_VALUE));}
+
+	public void requeue(Process p, int slice, int pulse){
+		p.schedKey += slice * cost(p.getPriority());
+		offer(p, pulse);}
+
+	/** Charges a process that blocks for I/O for what it ran; it comes back
+	 *  through offer, no further behind than the minimum. */
+	@Override
+	public void block(Process p, int slice, int pulse){p.schedKey += slice * cost(p.getPriority());}
+
+	public int size(){return ready.size();}
+
+	public String getName(){return "Fair Share (CFS)";}
+}
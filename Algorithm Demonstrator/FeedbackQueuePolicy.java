@@ -0,0 +1,99 @@
+
+/** Multilevel feedback queue. New processes enter the top level; a
+ *  process that uses up the quantum of its level drops one level, and
+ *  each level down doubles the quantum. A process waiting on a lower
+ *  level is preempted as soon as anything is ready above it, and one
+ *  that blocks for I/O within its quantum comes back on its level. Every
+ *  boostPeriod pulses all levels are moved back to the top so that
+ *  long jobs cannot starve; with Process.Queue.takeAll that costs
+ *  O(levels) no matter how many processes are waiting. */
+public class FeedbackQueuePolicy implements SchedulingPolicy{
+
+	private final Process.Queue[] levels;
+	private final int baseQuantum, boostPeriod;
+	private int lastBoost, size;
+
+	/** Instantiates three levels with quanta 2, 4 and 8 and a boost every 200 pulses. */
+	public FeedbackQueuePolicy(){this(3, 2, 200);}
+
+	/** Instantiates a policy with the given number of levels, top quantum and boost period. */
+	public FeedbackQueuePolicy(int levelCount, int baseQuantum, int boostPeriod){
+		if (levelCount < 1 || levelCount > 30) throw new IllegalArgumentException("levelCount must be in [1,30]");
+		if (baseQuantum < 1) throw new IllegalArgumentException("baseQuantum must be positive");
+		if (boostPeriod < 1) throw new IllegalArgumentException("boostPeriod must be positive");
+		levels = new Process.Queue[levelCount];
+		for (int i=0; i < levelCount; i++)
+			levels[i] = new Process.Queue();
+		this.baseQuantum = baseQuantum;
+		this.boostPeriod = boostPeriod;}
+
+	/** Gets the quantum of a level. */
+	public int quantum(int level){return baseQuantum << level;}
+
+	public void offer(Process p, int pulse){
+		levels[0].offer(p);
+		size++;}
+
+	@Override
+	public void offerAll(Process.Queue pq, int pulse){
+		size += pq.size();
+		levels[0].takeAll(pq);}
+
+	/** Takes the first process of the highest non-empty level.
+	 *  The level it came from is kept in schedKey while it runs. */
+	public Process poll(int pulse){
+		if (pulse - lastBoost >= boostPeriod){
+			for (int i=1; i < levels.length; i++)
+				levels[0].takeAll(levels[i]);
+			lastBoost = pulse;}
+		for (int i=0; i < levels.length; i++){
+			Process p = levels[i].poll();
+			if (p != null){
+				p.schedKey = i;
+				size--;
+				return p;}
+		}
+		return null;
+	}
+
+	public boolean preempt(Process running, int slice, int pulse){
+		int level = (int) running.schedKey;
+		if (slice >= quantum(level)) return true;
+		for (int i=0; i < level; i++)
+			if (!levels[i].isEmpty()) return true;
+		return false;
+	}
+
+	@Override
+	public int runLength(Process running, int slice, int pulse){
+		int level = (int) running.schedKey;
+		for (int i=0; i < level; i++)
+			if (!levels[i].isEmpty()) return 1;
+		return Math.max(1, quantum(level) - slice);}
+
+	public void requeue(Process p, int slice, int pulse){
+		int level = (int) p.schedKey;
+		if (slice >= quantum(level) && level < levels.length-1) level++;
+		levels[level].offer(p);
+		size++;}
+
+	/** A process that blocks for I/O before it used up its quantum keeps its
+	 *  level; that is what favors interactive processes. The pulse it blocked
+	 *  at is kept in schedSeq. */
+	@Override
+	public void block(Process p, int slice, int pulse){
+		int level = (int) p.schedKey;
+		if (slice >= quantum(level) && level < levels.length-1) p.schedKey = level+1;
+		p.schedSeq = pulse;}
+
+	/** Puts a process back on the level it blocked on, or on the top level
+	 *  if all levels were boosted while it waited. */
+	@Override
+	public void wake(Process p, int pulse){
+		levels[p.schedSeq < lastBoost ? 0 : (int) p.schedKey].offer(p);
+		size++;}
+
+	public int size(){return size;}
+
+	public String getName(){return "Multilevel Feedback Queue";}
+}
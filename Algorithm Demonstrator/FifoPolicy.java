@@ -0,0 +1,24 @@
+
+/** Strict FIFO: processes run to completion in the order they became ready. */
+public class FifoPolicy implements SchedulingPolicy{
+
+	private final Process.Queue ready = new Process.Queue();
+
+	public void offer(Process p, int pulse){ready.offer(p);}
+
+	@Override
+	public void offerAll(Process.Queue pq, int pulse){ready.takeAll(pq);}
+
+	public Process poll(int pulse){return ready.poll();}
+
+	public boolean preempt(Process running, int slice, int pulse){return false;}
+
+	@Override
+	public int runLength(Process running, int slice, int pulse){return Integer.MAX_VALUE;}
+
+	public void requeue(Process p, int slice, int pulse){ready.offer(p);}
+
+	public int size(){return ready.size();}
+
+	public String getName(){return "Strict FIFO";}
+}
@@ -0,0 +1,144 @@
+import java.util.Arrays;
+import java.util.Random;
+
+
+/** Synthetic open-system workloads, generated one process at a time.
+ *  Arrivals are either a Poisson process or bursty on/off traffic (Poisson
+ *  during exponentially long on periods, silent during off periods), and
+ *  job sizes are fixed, exponential or heavy-tailed (Pareto, shape 1.5).
+ *  Optionally a share of the processes are I/O bound: their instructions
+ *  are cut into exponential CPU bursts with exponential I/O bursts on the
+ *  device "disk" in between. The I/O mix is drawn from its own generator,
+ *  so adding it leaves arrivals and sizes as they were.
+ *  The same parameters and seed always generate the same processes. */
+public class GeneratedWorkload implements Workload{
+
+	/** Distribution of the number of instructions per process. */
+	public enum Sizes{FIXED, EXPONENTIAL, PARETO}
+
+	/** Shape of the Pareto distribution: heavy tail with infinite variance. */
+	private static final double PARETO_SHAPE = 1.5;
+
+	/** The device I/O bound processes use. */
+	public static final String DEVICE = "disk";
+
+	private final long count;
+	private final double rate, meanOn, meanOff, meanSize;
+	private final Sizes sizes;
+	private final Random random, io;
+	private double ioShare, meanBurst, meanIO;
+	private long made;
+	private double time, onUntil;
+
+	private GeneratedWorkload(long count, double rate, double meanOn, double meanOff, Sizes sizes, double meanSize, long seed){
+		if (count < 0) throw new IllegalArgumentException("count must not be negative");
+		if (!(rate > 0) || !(meanSize >= 1)) throw new IllegalArgumentException("rate must be positive and meanSize at least 1");
+		if (sizes == null) throw new NullPointerException("sizes must not be null");
+		this.count = count;
+		this.rate = rate;
+		this.meanOn = meanOn;
+		this.meanOff = meanOff;
+		this.sizes = sizes;
+		this.meanSize = meanSize;
+		random = new Random(seed);
+		io = new Random(~seed);
+		onUntil = meanOff > 0 ? exponential(meanOn) : Double.POSITIVE_INFINITY;}
+
+	/** Generates count processes arriving as a Poisson process with the
+	 *  given rate (processes per pulse). */
+	public static GeneratedWorkload poisson(long count, double rate, Sizes sizes, double meanSize, long seed){
+		return new GeneratedWorkload(count, rate, 0, 0, sizes, meanSize, seed);}
+
+	/** Generates count processes arriving at the given rate during on periods
+	 *  and not at all during off periods; both have exponential lengths. */
+	public static GeneratedWorkload bursty(long count, double rate, double meanOn, double meanOff, Sizes sizes, double meanSize, long seed){
+		if (!(meanOn > 0) || !(meanOff > 0)) throw new IllegalArgumentException("on and off periods must be positive");
+		return new GeneratedWorkload(count, rate, meanOn, meanOff, sizes, meanSize, seed);}
+
+	/** Makes the given share of the processes to come I/O bound, with CPU
+	 *  bursts of meanBurst instructions and I/O bursts of meanIO pulses on
+	 *  average. Returns this workload. */
+	public GeneratedWorkload withIO(double share, double meanBurst, double meanIO){
+		if (!(share >= 0 && share <= 1)) throw new IllegalArgumentException("share must be between 0 and 1");
+		if (!(meanBurst >= 1) || !(meanIO >= 1)) throw new IllegalArgumentException("mean bursts must be at least 1");
+		ioShare = share;
+		this.meanBurst = meanBurst;
+		this.meanIO = meanIO;
+		return this;}
+
+	/** Parses "poisson:COUNT:RATE:MEANSIZE[:SIZES]" or
+	 *  "bursty:COUNT:RATE:MEANSIZE:MEANON:MEANOFF[:SIZES]",
+	 *  where SIZES is fixed, exponential (default) or pareto, optionally
+	 *  followed by "+io:SHARE:MEANBURST:MEANIO" (see withIO). */
+	public static GeneratedWorkload parse(String spec, long seed){
+		int plus = spec.indexOf('+');
+		if (plus >= 0){
+			String[] f = spec.substring(plus+1).split(":");
+			if (f.length != 4 || !f[0].equalsIgnoreCase("io")) throw new IllegalArgumentException("Unknown workload option: "+spec.substring(plus+1));
+			return parse(spec.substring(0, plus), seed).withIO(Double.parseDouble(f[1]), Double.parseDouble(f[2]), Double.parseDouble(f[3]));}
+		String[] f = spec.split(":");
+		try {
+			long count = Long.parseLong(f[1]);
+			double rate = Double.parseDouble(f[2]), size = Double.parseDouble(f[3]);
+			switch (f[0].toLowerCase()){
+			case "poisson":
+				return poisson(count, rate, f.length > 4 ? Sizes.valueOf(f[4].toUpperCase()) : Sizes.EXPONENTIAL, size, seed);
+			case "bursty":
+				return bursty(count, rate, Double.parseDouble(f[4]), Double.parseDouble(f[5]),
+						f.length > 6 ? Sizes.valueOf(f[6].toUpperCase()) : Sizes.EXPONENTIAL, size, seed);
+			default: throw new IllegalArgumentException("Unknown workload: "+f[0]);
+			}
+		}
+		catch (IndexOutOfBoundsException e){throw new IllegalArgumentException("Incomplete workload: "+spec);}
+	}
+
+	/** Draws from an exponential distribution with the given mean. */
+	private double exponential(double mean){return -mean * Math.log(1 - random.nextDouble());}
+
+	/** Draws a job size of at least one instruction. */
+	private int size(){
+		double s;
+		switch (sizes){
+		case FIXED: s = meanSize; break;
+		case EXPONENTIAL: s = exponential(meanSize); break;
+		default: // Pareto with the requested mean: scale = mean * (shape-1) / shape
+			s = meanSize * (PARETO_SHAPE-1) / PARETO_SHAPE / Math.pow(1 - random.nextDouble(), 1 / PARETO_SHAPE);
+		}
+		return (int) Math.max(1, Math.min(Math.round(s), Integer.MAX_VALUE));
+	}
+
+	/** Draws at least one from an exponential distribution of the I/O mix. */
+	private int burst(double mean){return (int) Math.max(1, Math.min(Math.round(-mean * Math.log(1 - io.nextDouble())), Integer.MAX_VALUE));}
+
+	/** Makes a process of the given size, I/O bound if the mix says so. */
+	private Process process(String name, int size){
+		if (ioShare == 0 || io.nextDouble() >= ioShare) return new Process(name, size);
+		int[] bursts = new int[8];
+		int n = 0, left = size;
+		while (true){
+			int cpu = Math.min(left, burst(meanBurst));
+			if (n+2 > bursts.length) bursts = Arrays.copyOf(bursts, bursts.length*2);
+			bursts[n++] = cpu;
+			left -= cpu;
+			if (left == 0) break;
+			bursts[n++] = burst(meanIO);}
+		if (n == 1) return new Process(name, size);
+		String[] devices = new String[n/2];
+		Arrays.fill(devices, DEVICE);
+		return new Process(name, Arrays.copyOf(bursts, n), devices);
+	}
+
+	public Process next(){
+		if (made == count) return null;
+		time += exponential(1 / rate);
+		while (time > onUntil){ // the arrival fell past the on period: shift it over the off period
+			double off = exponential(meanOff);
+			time += off;
+			onUntil += off + exponential(meanOn);}
+		if (time > Integer.MAX_VALUE) throw new IllegalStateException("workload runs past the last pulse");
+		Process p = process("job"+made, size());
+		p.setArrival((int) time);
+		made++;
+		return p;
+	}
+}
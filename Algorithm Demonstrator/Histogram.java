@@ -0,0 +1,100 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/** A histogram of non-negative longs in constant memory, bucketed the way
+ *  HdrHistogram does it: values below 128 get a bucket each, and every
+ *  power of two above that is split into 64 linear buckets, so every value
+ *  is kept to within 1/64 (about 1.6%) of itself. That takes 3712 counters
+ *  however many values are recorded and however large they are. Count,
+ *  sum, minimum and maximum are exact. */
+public class Histogram{
+
+	private static final int BITS = 7, SUB = 1 << BITS, HALF = SUB >> 1;
+
+	private final long[] counts = new long[SUB + (63-BITS) * HALF];
+	private long count, sum, min = Long.MAX_VALUE, max;
+
+	/** Gets the bucket of a value. */
+	static int index(long v){
+		if (v < SUB) return (int) v;
+		int shift = 64 - Long.numberOfLeadingZeros(v) - BITS;
+		return SUB + (shift-1) * HALF + (int) (v >>> shift) - HALF;}
+
+	/** Gets the smallest value of a bucket. */
+	static long lowest(int i){
+		if (i < SUB) return i;
+		int shift = (i - SUB) / HALF + 1;
+		return (long) ((i - SUB) % HALF + HALF) << shift;}
+
+	/** Gets the largest value of a bucket. */
+	static long highest(int i){
+		if (i < SUB) return i;
+		return lowest(i) + (1L << ((i - SUB) / HALF + 1)) - 1;}
+
+	/** Records a value. */
+	public void record(long v){
+		if (v < 0) throw new IllegalArgumentException("negative value: "+v);
+		counts[index(v)]++;
+		count++;
+		sum += v;
+		if (v < min) min = v;
+		if (v > max) max = v;}
+
+	/** Adds every value recorded in another histogram. */
+	public void add(Histogram h){
+		for (int i=0; i < counts.length; i++)
+			counts[i] += h.counts[i];
+		count += h.count;
+		sum += h.sum;
+		min = Math.min(min, h.min);
+		max = Math.max(max, h.max);}
+
+	/** Forgets every value. */
+	public void reset(){
+		Arrays.fill(counts, 0);
+		count = sum = max = 0;
+		min = Long.MAX_VALUE;}
+
+	/** Gets the number of values recorded. */
+	public long getCount(){return count;}
+
+	/** Gets the smallest value recorded, 0 if there are none. */
+	public long getMin(){return count == 0 ? 0 : min;}
+
+	/** Gets the largest value recorded, 0 if there are none. */
+	public long getMax(){return max;}
+
+	/** Gets the mean of the values recorded, 0 if there are none. */
+	public double getMean(){return count == 0 ? 0 : (double) sum / count;}
+
+	/** Gets the value that the given percentage of recorded values are at or
+	 *  below, rounded up to the end of its bucket; 0 if there are none. */
+	public long getPercentile(double percent){
+		if (count == 0) return 0;
+		if (percent <= 0) return min;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(percent, 100) / 100 * count));
+		long seen = 0;
+		for (int i=0; i < counts.length; i++){
+			seen += counts[i];
+			if (seen >= rank) return Math.min(highest(i), max);}
+		return max;
+	}
+
+	/** Writes one CSV row per non-empty bucket: its largest value, the
+	 *  percentage of values at or below it and its count. */
+	public void write(PrintStream out){
+		out.println("value,percentile,count");
+		long seen = 0;
+		for (int i=0; i < counts.length && seen < count; i++){
+			if (counts[i] == 0) continue;
+			seen += counts[i];
+			out.printf(Locale.ROOT, "%d,%.4f,%d%n", Math.min(highest(i), max), 100.0 * seen / count, counts[i]);}
+	}
+
+	@Override
+	public String toString(){
+		return String.format(Locale.ROOT, "n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+				count, getMean(), getPercentile(50), getPercentile(90), getPercentile(99), max);}
+}
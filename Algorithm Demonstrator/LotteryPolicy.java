@@ -0,0 +1,89 @@
+import java.util.Random;
+
+
+/** Lottery scheduling. Every ready process holds tickets in proportion
+ *  to its priority's load weight, and after every quantum a random
+ *  ticket picks the next process. Ticket counts live in a Fenwick tree
+ *  over slots, so drawing, adding and removing are all O(log n). Runs
+ *  with the same seed draw the same tickets. */
+public class LotteryPolicy implements SchedulingPolicy{
+
+	private final int quantum;
+	private final Random random;
+	private Process[] slots = new Process[16];
+	private long[] tree = new long[17]; // 1-based partial sums of tickets
+	private int[] free = new int[16];
+	private int freeCount, used, size;
+	private long tickets;
+
+	/** Instantiates a policy with a quantum of 5 pulses and seed 0. */
+	public LotteryPolicy(){this(5, 0);}
+
+	/** Instantiates a policy that draws every quantum pulses from the given seed. */
+	public LotteryPolicy(int quantum, long seed){
+		if (quantum < 1) throw new IllegalArgumentException("quantum must be positive");
+		this.quantum = quantum;
+		random = new Random(seed);}
+
+	private static int tickets(Process p){return FairSharePolicy.weight(p.getPriority());}
+
+	/** Adds delta to the tickets of slot i. */
+	private void update(int i, long delta){
+		for (i++; i < tree.length; i += i & -i)
+			tree[i] += delta;}
+
+	/** Finds the slot holding the ticket numbered r (0 <= r < tickets). */
+	private int find(long r){
+		int pos = 0;
+		for (int step = Integer.highestOneBit(slots.length); step > 0; step >>= 1){
+			if (pos+step < tree.length && tree[pos+step] <= r){
+				pos += step;
+				r -= tree[pos];}
+		}
+		return pos;
+	}
+
+	/** Doubles the slots and rebuilds the tree in linear time. */
+	private void grow(){
+		Process[] old = slots;
+		slots = new Process[old.length*2];
+		System.arraycopy(old, 0, slots, 0, old.length);
+		free = new int[slots.length];
+		tree = new long[slots.length+1];
+		for (int i=0; i < old.length; i++){
+			if (old[i] == null) free[freeCount++] = i;
+			else tree[i+1] += tickets(old[i]);
+			int parent = i+1 + ((i+1) & -(i+1));
+			if (parent < tree.length) tree[parent] += tree[i+1];}
+	}
+
+	public void offer(Process p, int pulse){
+		if (freeCount == 0 && used == slots.length) grow();
+		int i = freeCount > 0 ? free[--freeCount] : used++;
+		slots[i] = p;
+		update(i, tickets(p));
+		tickets += tickets(p);
+		size++;}
+
+	public Process poll(int pulse){
+		if (size == 0) return null;
+		int i = find(random.nextLong(tickets));
+		Process p = slots[i];
+		slots[i] = null;
+		free[freeCount++] = i;
+		update(i, -tickets(p));
+		tickets -= tickets(p);
+		size--;
+		return p;}
+
+	public boolean preempt(Process running, int slice, int pulse){return slice >= quantum;}
+
+	@Override
+	public int runLength(Process running, int slice, int pulse){return Math.max(1, quantum - slice);}
+
+	public void requeue(Process p, int slice, int pulse){offer(p, pulse);}
+
+	public int size(){return size;}
+
+	public String getName(){return "Lottery";}
+}
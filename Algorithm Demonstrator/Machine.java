@@ -0,0 +1,42 @@
+
+/** Something that runs processes one pulse at a time: a single-CPU
+ *  Scheduler or a MultiCoreScheduler. The batch runner only needs this. */
+public interface Machine{
+
+	/** Schedules a new process. */
+	void schedule(Process p);
+
+	/** Schedules all processes from the parameter queue, leaving it empty. */
+	void scheduleAll(Process.Queue pq);
+
+	/** Sets a stream of processes to schedule as they arrive; a process
+	 *  arriving at pulse t is ready from pulse t+1 on, just like processes
+	 *  scheduled before the first step arrive at pulse 0. */
+	void setWorkload(Workload w);
+
+	/** Sets whether finished processes are kept in the done queue (the
+	 *  default). Long streaming runs turn this off and count completions
+	 *  through the listener instead. */
+	void setKeepDone(boolean keep);
+
+	/** Advances the machine by one pulse. */
+	void step();
+
+	/** Checks if every scheduled process has finished and none are still to arrive. */
+	boolean isDone();
+
+	/** Gets the number of pulses the machine has been stepped. */
+	int getPulse();
+
+	/** Gets the finished processes in order of completion. */
+	Process.Queue getDoneQueue();
+
+	/** Gets the measurements of this machine, kept up to date as it runs. */
+	Metrics getMetrics();
+
+	/** Gets the I/O devices and the processes blocked on them. */
+	Devices getDevices();
+
+	/** Sets the listener told about loads, unloads and completions (may be null). */
+	void setListener(SchedulerListener l);
+}
@@ -0,0 +1,171 @@
+import java.io.PrintStream;
+import java.util.Locale;
+
+
+/** Live measurements of a machine, in constant memory. Every machine owns
+ *  one and keeps it up to date as it runs, so it can be read at any pulse
+ *  or written out at the end:
+ *  - throughput (processes finished per pulse) and CPU utilization (the
+ *    share of CPU pulses that performed an instruction);
+ *  - context switches;
+ *  - histograms of turnaround (arrival to completion), response (arrival
+ *    to first time on a CPU) and wait (turnaround minus instructions and
+ *    I/O service, so time spent ready or queued for a device);
+ *  - the number of ready processes over time.
+ *  All times are in pulses. */
+public class Metrics{
+
+	private final int cpus;
+	private final Histogram turnaround = new Histogram(), response = new Histogram(), wait = new Histogram();
+	private final Series queue = new Series(512);
+	private long busy, switches, completed;
+	private int pulse;
+
+	/** Instantiates the metrics of a machine with the given number of CPUs. */
+	public Metrics(int cpus){
+		if (cpus < 1) throw new IllegalArgumentException("need at least one CPU");
+		this.cpus = cpus;}
+
+	// Called by the machine as it runs
+
+	/** Notes the current pulse. */
+	void pulse(int p){pulse = p;}
+
+	/** Notes that from pulse on, this many processes are ready. */
+	void queue(int from, int ready){queue.set(from, ready);}
+
+	/** Notes the current pulse and how many processes are ready at its start. */
+	void tick(int p, int ready){
+		pulse = p;
+		queue.set(p, ready);}
+
+	/** Notes that a process that arrived at arrival first got a CPU at pulse. */
+	void started(int arrival, int pulse){response.record(pulse - 1 - arrival);}
+
+	/** Notes that a process that arrived at arrival finished at pulse, having
+	 *  spent service pulses performing instructions or being served I/O. */
+	void completed(int arrival, int service, int pulse){
+		completed++;
+		turnaround.record(pulse - arrival);
+		wait.record(pulse - arrival - service);}
+
+	/** Notes a context switch. */
+	void switched(){switches++;}
+
+	/** Notes that n instructions were performed. */
+	void executed(long n){busy += n;}
+
+	// Read by anyone
+
+	/** Gets the pulse the machine is at. */
+	public int getPulse(){return pulse;}
+
+	/** Gets the number of processes finished. */
+	public long getCompleted(){return completed;}
+
+	/** Gets the processes finished per pulse. */
+	public double getThroughput(){return pulse == 0 ? 0 : (double) completed / pulse;}
+
+	/** Gets the share of CPU pulses, over all CPUs, that performed an instruction. */
+	public double getUtilization(){return pulse == 0 ? 0 : (double) busy / ((double) pulse * cpus);}
+
+	/** Gets the number of context switches. */
+	public long getContextSwitches(){return switches;}
+
+	/** Gets the pulses from arrival to completion of every finished process. */
+	public Histogram getTurnaround(){return turnaround;}
+
+	/** Gets the pulses from arrival to first getting a CPU of every process that got one. */
+	public Histogram getResponse(){return response;}
+
+	/** Gets the pulses every finished process spent neither performing instructions nor being served I/O. */
+	public Histogram getWait(){return wait;}
+
+	/** Gets the number of ready processes over time, up to the current pulse. */
+	public Series getQueueLength(){
+		queue.advance(pulse+1);
+		return queue;}
+
+	/** Writes a summary, then every histogram and the queue length as CSV. */
+	public void write(PrintStream out){
+		out.println(this);
+		out.println("# turnaround");
+		turnaround.write(out);
+		out.println("# response");
+		response.write(out);
+		out.println("# wait");
+		wait.write(out);
+		out.println("# ready processes");
+		getQueueLength().write(out);
+	}
+
+	@Override
+	public String toString(){
+		return String.format(Locale.ROOT, "%d pulses, %d finished, throughput %.5f, utilization %.3f, %d context switches%n"
+				+"turnaround %s%nresponse %s%nwait %s",
+				pulse, completed, getThroughput(), getUtilization(), switches, turnaround, response, wait);}
+
+	/** A step function of time, downsampled into at most a fixed number of
+	 *  windows. When the windows run out, neighbours are merged pairwise and
+	 *  the window doubles, so memory stays constant and the whole run is
+	 *  always covered. Each window keeps the time-weighted mean and the
+	 *  maximum of the function over it. */
+	public static class Series{
+		private final double[] sums, maxima;
+		private long window = 1, now;
+		private double value;
+
+		Series(int windows){
+			sums = new double[windows];
+			maxima = new double[windows];}
+
+		/** Sets the value from time t on; t must not go back. */
+		void set(long t, double v){
+			if (v == value) return;
+			advance(t);
+			value = v;}
+
+		/** Accounts for the current value up to time t. */
+		void advance(long t){
+			while (now < t){
+				long i = now / window;
+				if (i >= sums.length){
+					compact();
+					continue;}
+				long end = Math.min(t, (i+1) * window);
+				sums[(int) i] += value * (end - now);
+				maxima[(int) i] = Math.max(maxima[(int) i], value);
+				now = end;}
+		}
+
+		private void compact(){
+			int half = sums.length / 2;
+			for (int i=0; i < half; i++){
+				sums[i] = sums[2*i] + sums[2*i+1];
+				maxima[i] = Math.max(maxima[2*i], maxima[2*i+1]);}
+			for (int i=half; i < sums.length; i++){
+				sums[i] = 0;
+				maxima[i] = 0;}
+			window *= 2;}
+
+		/** Gets the number of pulses each window covers. */
+		public long getWindow(){return window;}
+
+		/** Gets the number of windows with data. */
+		public int size(){return (int) ((now + window - 1) / window);}
+
+		/** Gets the mean value over a window. */
+		public double getMean(int i){
+			long from = i * window, to = Math.min(now, from + window);
+			return to > from ? sums[i] / (to - from) : 0;}
+
+		/** Gets the maximum value over a window. */
+		public double getMax(int i){return maxima[i];}
+
+		/** Writes one CSV row per window: its first pulse, mean and maximum. */
+		public void write(PrintStream out){
+			out.println("pulse,mean,max");
+			for (int i=0; i < size(); i++)
+				out.printf(Locale.ROOT, "%d,%.3f,%.0f%n", i * window, getMean(i), getMax(i));}
+	}
+}
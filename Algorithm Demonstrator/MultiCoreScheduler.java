@@ -0,0 +1,195 @@
+import java.util.Random;
+import java.util.function.Supplier;
+
+
+/** A scheduler driving several CPUs at once. Each core has its own
+ *  scheduling policy (and so its own ready queue) unless the balance
+ *  mode is GLOBAL, where all cores share one. It keeps the busy pulses
+ *  of every core and counts migrations, i.e. loads of a process on a
+ *  different core than the one it was queued on or last ran on.
+ *
+ *  A pulse has three phases: idle cores pick processes, every core
+ *  performs an instruction, then finished, blocked and preempted processes
+ *  are put away. A process done with its I/O goes back to the ready queue
+ *  of the core it last ran on. The phases run one core after another, in
+ *  core order, so listeners see the events of a pulse in the same order on
+ *  every run and a trace can be checked against a new simulation. */
+public class MultiCoreScheduler implements Machine{
+
+	/** How processes are spread over the cores. */
+	public enum Balance{
+		/** One ready queue shared by all cores. */
+		GLOBAL,
+		/** A ready queue per core; an idle core with nothing ready steals from another. */
+		STEALING,
+		/** A ready queue per core; a process stays on the core it was placed on. */
+		AFFINITY}
+
+	private final CPU[] cpus;
+	private final SchedulingPolicy[] policies;
+	private final Balance balance;
+	private final int[] slices;
+	private final boolean[] executed;
+	private final long[] busy;
+	private final Random victims = new Random(0);
+	private final Process.Queue done = new Process.Queue();
+	private final Metrics metrics;
+	private final Devices devices = new Devices();
+	private int pulse, placed, remaining;
+	private long migrations;
+	private SchedulerListener listener;
+	private Workload workload;
+	private Process upcoming;
+	private boolean keepDone = true;
+
+	/** Instantiates a scheduler with the given number of cores, balance
+	 *  mode and a supplier of fresh policies (one per ready queue). */
+	public MultiCoreScheduler(int cores, Balance b, Supplier<SchedulingPolicy> policy){this(cores, b, policy, 0);}
+
+	/** Instantiates a scheduler whose cores spend switchCost pulses per context switch. */
+	public MultiCoreScheduler(int cores, Balance b, Supplier<SchedulingPolicy> policy, int switchCost){
+		if (cores < 1) throw new IllegalArgumentException("need at least one core");
+		if (b == null || policy == null) throw new NullPointerException();
+		balance = b;
+		cpus = new CPU[cores];
+		policies = new SchedulingPolicy[cores];
+		for (int i=0; i < cores; i++){
+			cpus[i] = new CPU(switchCost);
+			policies[i] = (b == Balance.GLOBAL && i > 0) ? policies[0] : policy.get();}
+		slices = new int[cores];
+		executed = new boolean[cores];
+		busy = new long[cores];
+		metrics = new Metrics(cores);}
+
+	/** Gets the number of cores. */
+	public int getCores(){return cpus.length;}
+
+	/** Gets one core. */
+	public CPU getCPU(int core){return cpus[core];}
+
+	/** Gets the balance mode. */
+	public Balance getBalance(){return balance;}
+
+	/** Gets the fraction of pulses so far in which the core performed an instruction;
+	 *  pulses spent switching contexts do not count. */
+	public double getUtilization(int core){return pulse == 0 ? 0 : (double) busy[core] / pulse;}
+
+	/** Gets the number of times a process was loaded on a different core than
+	 *  the one it was queued on or last ran on (steals included). */
+	public long getMigrations(){return migrations;}
+
+	/** Places a new process: round robin over the cores unless it is already pinned. */
+	public void schedule(Process p){
+		int core = 0;
+		if (balance != Balance.GLOBAL){
+			if (balance == Balance.AFFINITY && p.lastCore >= 0 && p.lastCore < cpus.length) core = p.lastCore;
+			else core = placed++ % cpus.length;
+			p.lastCore = core;}
+		policies[core].offer(p, pulse);
+		remaining++;}
+
+	public void scheduleAll(Process.Queue pq){
+		if (balance == Balance.GLOBAL){
+			remaining += pq.size();
+			policies[0].offerAll(pq, pulse);
+			return;}
+		Process p;
+		while ((p = pq.poll()) != null)
+			schedule(p);}
+
+	public void setWorkload(Workload w){
+		workload = w;
+		upcoming = w == null ? null : w.next();}
+
+	public void setKeepDone(boolean keep){keepDone = keep;}
+
+	public Process.Queue getDoneQueue(){return done;}
+
+	public void setListener(SchedulerListener l){listener = l;}
+
+	public Metrics getMetrics(){return metrics;}
+
+	public Devices getDevices(){return devices;}
+
+	/** Gets the number of ready processes over all ready queues. */
+	private int ready(){
+		if (balance == Balance.GLOBAL) return policies[0].size();
+		int n = 0;
+		for (SchedulingPolicy p: policies)
+			n += p.size();
+		return n;}
+
+	public int getPulse(){return pulse;}
+
+	public boolean isDone(){return remaining == 0 && upcoming == null;}
+
+	/** Takes the next process of another core, starting at a random victim. */
+	private Process steal(int thief){
+		int n = cpus.length;
+		int start = victims.nextInt(n);
+		for (int i=0; i < n; i++){
+			int victim = (start+i) % n;
+			if (victim != thief && !policies[victim].isEmpty())
+				return policies[victim].poll(pulse);}
+		return null;
+	}
+
+	/** Performs one instruction on a core, if it has a process and is not switching. */
+	private void execute(int core){
+		executed[core] = cpus[core].hasProcess() && cpus[core].step();
+		if (executed[core]){
+			slices[core]++;
+			busy[core]++;}
+	}
+
+	public void step(){
+		pulse++;
+		while (upcoming != null && upcoming.getArrival() < pulse){
+			schedule(upcoming);
+			upcoming = workload.next();}
+		Process woken;
+		while ((woken = devices.wake(pulse)) != null)
+			policies[woken.lastCore].wake(woken, pulse);
+		metrics.tick(pulse, ready());
+
+		// Idle cores pick up a process, stealing one if allowed
+		for (int c=0; c < cpus.length; c++){
+			if (cpus[c].hasProcess()) continue;
+			Process next = policies[c].poll(pulse);
+			if (next == null && balance == Balance.STEALING) next = steal(c);
+			if (next == null) continue;
+			if (next.lastCore >= 0 && next.lastCore != c) migrations++;
+			next.lastCore = c;
+			if (cpus[c].load(next)) metrics.switched();
+			if (next.getFinished() == 0) metrics.started(next.getArrival(), pulse);
+			slices[c] = 0;
+			if (listener != null) listener.loaded(next, pulse);}
+
+		// Every core performs an instruction
+		for (int c=0; c < cpus.length; c++)
+			execute(c);
+
+		// Put away finished and preempted processes
+		for (int c=0; c < cpus.length; c++){
+			if (!executed[c]) continue;
+			metrics.executed(1);
+			Process p = cpus[c].getProcess();
+			if (p.isDone()){
+				cpus[c].unload();
+				p.complete(pulse);
+				metrics.completed(p.getArrival(), p.getTotal() + p.getIOTotal(), pulse);
+				if (keepDone) done.offer(p);
+				remaining--;
+				if (listener != null) listener.completed(p, pulse);}
+			else if (p.isBlocked()){
+				cpus[c].unload();
+				policies[c].block(p, slices[c], pulse);
+				devices.block(p, pulse);
+				if (listener != null) listener.blocked(p, pulse);}
+			else if (policies[c].preempt(p, slices[c], pulse)){
+				cpus[c].unload();
+				policies[c].requeue(p, slices[c], pulse);
+				if (listener != null) listener.unloaded(p, pulse);}
+		}
+	}
+}
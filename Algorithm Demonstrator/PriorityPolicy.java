@@ -0,0 +1,51 @@
+import java.util.PriorityQueue;
+
+
+/** Preemptive priority scheduling with aging. A ready process gains one
+ *  priority level for every agingInterval pulses it waits, so nothing
+ *  starves. The running process is unloaded once a ready process is at
+ *  least one level more important than it.
+ *
+ *  Since every waiting process ages at the same rate, their relative
+ *  order never changes: a process is keyed once, when it becomes ready,
+ *  by priority * agingInterval + pulse, and kept in a binary heap. */
+public class PriorityPolicy implements SchedulingPolicy{
+
+	private final int agingInterval;
+	private final PriorityQueue<Process> ready = new PriorityQueue<>((a, b) -> {
+		int c = Long.compare(a.schedKey, b.schedKey);
+		return c != 0 ? c : Long.compare(a.schedSeq, b.schedSeq);});
+	private long arrivals;
+
+	/** Instantiates a policy that ages waiting processes every 10 pulses. */
+	public PriorityPolicy(){this(10);}
+
+	/** Instantiates a policy that ages waiting processes every agingInterval pulses. */
+	public PriorityPolicy(int agingInterval){
+		if (agingInterval < 1) throw new IllegalArgumentException("agingInterval must be positive");
+		this.agingInterval = agingInterval;}
+
+	public void offer(Process p, int pulse){
+		p.schedKey = (long) p.getPriority() * agingInterval + pulse;
+		p.schedSeq = arrivals++;
+		ready.offer(p);}
+
+	public Process poll(int pulse){return ready.poll();}
+
+	public boolean preempt(Process running, int slice, int pulse){
+		Process best = ready.peek();
+		return best != null && best.schedKey + agingInterval <= (long) running.getPriority() * agingInterval + pulse;}
+
+	@Override
+	public int runLength(Process running, int slice, int pulse){
+		Process best = ready.peek();
+		if (best == null) return Integer.MAX_VALUE;
+		long k = best.schedKey + agingInterval - (long) running.getPriority() * agingInterval - pulse;
+		return (int) Math.max(1, Math.min(k, Integer.MAX_VALUE));}
+
+	public void requeue(Process p, int slice, int pulse){offer(p, pulse);}
+
+	public int size(){return ready.size();}
+
+	public String getName(){return "Priority (aging)";}
+}
@@ -1,13 +1,10 @@
 
-import java.awt.Color;
 import java.util.AbstractQueue;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Random;
-import javax.swing.JProgressBar;
-import javax.swing.UIManager;
 
 
 public class Process implements Cloneable{
@@ -15,9 +12,25 @@ public class Process implements Cloneable{
 	private String name;
 	private int totalInstructions;
 	private int finishedInstructions;
-	private JProgressBar bar;
+	private int completionPulse = -1;
+	private int priority;
+	private int arrival;
 	Process next, prev;
 
+	/** CPU and I/O bursts, alternating and starting and ending with CPU (null
+	 *  for a single CPU burst), the device of every I/O burst, the index of
+	 *  the current burst and the finished instructions at its end. */
+	private int[] bursts;
+	private String[] devices;
+	private int burst, burstEnd, ioTotal;
+
+	/** Bookkeeping owned by the scheduling policy currently holding
+	 *  this process: an ordering key and an arrival tie-breaker. */
+	long schedKey, schedSeq;
+
+	/** The core this process last ran on, or -1; used by multi-core schedulers. */
+	int lastCore = -1;
+
 	/**
 	 * Instantiates a new process.
 	 */
@@ -25,6 +38,36 @@ public class Process implements Cloneable{
 		if (name == null) throw new NullPointerException("name must not be null");
 		this.name = name;
 		this.totalInstructions = totalIns;
+		this.burstEnd = totalIns;
+	}
+
+	/**
+	 * Instantiates a new process that alternates CPU bursts with I/O: bursts
+	 *  holds the instructions of a CPU burst, the pulses of an I/O burst, the
+	 *  instructions of the next CPU burst and so on, ending with CPU; devices
+	 *  names the device of every I/O burst.
+	 */
+	public Process(String name, int[] bursts, String[] devices) {
+		this(name, cpuTotal(bursts, devices));
+		if (bursts.length > 1){
+			this.bursts = bursts.clone();
+			this.devices = devices.clone();
+			burstEnd = bursts[0];
+			for (int i=1; i < bursts.length; i += 2)
+				ioTotal += bursts[i];}
+	}
+
+	/** Checks the bursts of a new process and sums its instructions. */
+	private static int cpuTotal(int[] bursts, String[] devices){
+		if (bursts.length % 2 == 0) throw new IllegalArgumentException("bursts must start and end with CPU");
+		if (devices.length != bursts.length / 2) throw new IllegalArgumentException("need a device for every I/O burst");
+		long total = 0;
+		for (int i=0; i < bursts.length; i++){
+			if (bursts[i] < 1) throw new IllegalArgumentException("every burst needs at least one pulse");
+			if (i % 2 == 0) total += bursts[i];
+			else if (devices[i/2] == null) throw new NullPointerException("device must not be null");}
+		if (total > Integer.MAX_VALUE) throw new IllegalArgumentException("too many instructions");
+		return (int) total;
 	}
 
 	/**
@@ -38,12 +81,6 @@ public class Process implements Cloneable{
 	/** Gets the name. */
 	public String getName(){return name;}
 
-	/** Gets the progress bar.*/
-	public JProgressBar getBar(){
-		if (bar == null) createProgressBar();
-		return bar;
-	}
-
 	/** Gets the total amount of instructions in the process. */
 	public int getTotal(){return totalInstructions;}
 
@@ -51,33 +88,75 @@ public class Process implements Cloneable{
 	 * Gets the amount of finished instructions.*/
 	public int getFinished(){return finishedInstructions;}
 
+	/** Gets the amount of instructions left to perform. */
+	public int getRemaining(){return totalInstructions - finishedInstructions;}
+
+	/** Checks if the process does any I/O. */
+	public boolean hasIO(){return bursts != null;}
+
+	/** Gets the bursts: CPU instructions and I/O pulses alternating, starting and ending with CPU. */
+	public int[] getBursts(){return bursts == null ? new int[] {totalInstructions} : bursts.clone();}
+
+	/** Gets the device of every I/O burst. */
+	public String[] getDevices(){return devices == null ? new String[0] : devices.clone();}
+
+	/** Gets the pulses of all I/O bursts together. */
+	public int getIOTotal(){return ioTotal;}
+
+	/** Gets the amount of instructions left in the current CPU burst. */
+	public int getBurstRemaining(){return burstEnd - finishedInstructions;}
+
+	/** Checks if the process finished a CPU burst and has to wait for I/O before it can go on. */
+	public boolean isBlocked(){return finishedInstructions == burstEnd && !isDone();}
+
+	/** Gets the device the process waits for, or null if it is not blocked. */
+	public String getDevice(){return isBlocked() ? devices[burst/2] : null;}
+
+	/** Gets the pulses of the I/O burst the process waits for, or 0 if it is not blocked. */
+	public int getIOLength(){return isBlocked() ? bursts[burst+1] : 0;}
+
+	/** Ends the I/O burst the process was blocked on; the next CPU burst can start. */
+	void finishIO(){
+		if (!isBlocked()) throw new IllegalStateException(name+" is not blocked");
+		burst += 2;
+		burstEnd += bursts[burst];}
+
+	/** Gets the pulse at which the process arrives, 0 (present from the start) by default. */
+	public int getArrival(){return arrival;}
+
+	/** Sets the pulse at which the process arrives. */
+	public void setArrival(int pulse){
+		if (pulse < 0) throw new IllegalArgumentException("arrival must not be negative: "+pulse);
+		arrival = pulse;}
+
+	/** Gets the priority, from -20 (most important) to 19 (least), 0 by default. */
+	public int getPriority(){return priority;}
+
+	/** Sets the priority, from -20 (most important) to 19 (least). */
+	public void setPriority(int p){
+		if (p < -20 || p > 19) throw new IllegalArgumentException("priority must be in [-20,19]: "+p);
+		priority = p;}
+
 	/**
 	 * Checks if the process is completed. */
 	public boolean isDone(){
 		return finishedInstructions == totalInstructions;}
 
-	/** Perform a single instruction of the process. */
+	/** Gets the pulse at which the process finished, or -1 if it has not. */
+	public int getCompletionPulse(){return completionPulse;}
+
+	/** Records the pulse at which the process finished. */
+	void complete(int pulse){completionPulse = pulse;}
+
+	/** Perform a single instruction of the process, unless it is done or blocked. */
 	public void performInstruction(){
-		if (!isDone())
+		if (finishedInstructions < burstEnd)
 			finishedInstructions++;
 	}
 
-	private void createProgressBar(){
-		bar = new JProgressBar(0, totalInstructions);
-		bar.setValue(finishedInstructions);
-		UIManager.put("ProgressBar.selectionForeground", Color.WHITE);
-		bar.setString(bar.getValue()+"/"+bar.getMaximum());
-		bar.setStringPainted(true);}
-
-	protected void updateProgressBar(boolean active){
-		getBar().setValue(finishedInstructions);
-		//set color
-		if (isDone() || !active) bar.setForeground(new Color(102,153,204));
-		else bar.setForeground(new Color(102,204,204));
-		//set label
-		if (isDone()) bar.setString("Finished @ "+Driver.pulseCt);
-		else bar.setString(finishedInstructions+"/"+totalInstructions);
-		bar.repaint();
+	/** Perform n instructions at once, stopping when the process is done or blocked. */
+	public void performInstructions(int n){
+		finishedInstructions += Math.min(n, burstEnd - finishedInstructions);
 	}
 
 	/**
@@ -93,7 +172,6 @@ public class Process implements Cloneable{
 			copy.totalInstructions=totalInstructions;
 			copy.finishedInstructions=finishedInstructions;
 			copy.next = copy.prev = null;
-			copy.bar = null;
 		}
 		catch (CloneNotSupportedException e){
 			throw new RuntimeException("forgot to make Cloneable?");
@@ -101,6 +179,20 @@ public class Process implements Cloneable{
 		return copy;
 	}
 
+	/** Returns a new process with the name, instructions, bursts, priority
+	 *  and arrival of p, that has not performed anything yet. */
+	private static Process copyOf(Process p){
+		Process copy = new Process(p.name, p.totalInstructions);
+		if (p.bursts != null){
+			copy.bursts = p.bursts; // never changed, so shared
+			copy.devices = p.devices;
+			copy.burstEnd = p.bursts[0];
+			copy.ioTotal = p.ioTotal;}
+		copy.priority = p.priority;
+		copy.arrival = p.arrival;
+		return copy;
+	}
+
 	/**
 	 *  Checks for equality of this process with the parameter process.
 	 *  It will check everything except for the links.
@@ -115,11 +207,23 @@ public class Process implements Cloneable{
 				p.name.equals(name);
 	}
 
+	/** A queue of processes linked through the processes themselves.
+	 *
+	 *  Clones are copy-on-write: a queue keeps an immutable snapshot of its
+	 *  processes (made once, and again only after it changes) that all its
+	 *  clones share, so cloning takes O(1). A clone copies a process out of
+	 *  the snapshot only when it is polled, peeked at or iterated over.
+	 *  Until then those processes sit, in order, right after the node front. */
 	public static class Queue extends AbstractQueue<Process> implements Cloneable{
 
 		private int manyItems;
 		private int version;
 		private Process dummy;
+		private Process front;
+		private Process[] spec;
+		private int specFrom, specTo;
+		private Process[] snapshot;
+		private int snapshotVersion;
 
 
 		/** Instantiates a new queue object.
@@ -127,6 +231,47 @@ public class Process implements Cloneable{
 		public Queue(){
 			this.dummy = new Process(); //Dummy will be a new process
 			dummy.prev = dummy.next = dummy; // with its links pointing to itsself
+			front = dummy;
+		}
+
+		/** Links p into the queue right after the node at. */
+		private void linkAfter(Process at, Process p){
+			p.prev = at;
+			p.next = at.next;
+			at.next.prev = p;
+			at.next = p;
+		}
+
+		/** Copies every process still in the shared snapshot into the queue. */
+		private void materialize(){
+			for (int i = specFrom; i < specTo; i++){
+				Process p = copyOf(spec[i]);
+				linkAfter(front, p);
+				front = p;}
+			release();
+		}
+
+		/** Lets go of the shared snapshot once nothing is left in it. */
+		private void release(){
+			spec = null;
+			specFrom = specTo = 0;
+			front = dummy;
+		}
+
+		/** Gets the processes of this queue as a snapshot that must not be changed. */
+		private Process[] snapshot(){
+			if (snapshot != null && snapshotVersion == version) return snapshot;
+			Process[] s = new Process[manyItems];
+			int i = 0;
+			Process p = dummy;
+			if (front != dummy)
+				do {p = p.next; s[i++] = copyOf(p);} while (p != front);
+			for (int j = specFrom; j < specTo; j++)
+				s[i++] = spec[j];
+			for (p = p.next; p != dummy; p = p.next)
+				s[i++] = copyOf(p);
+			snapshotVersion = version;
+			return snapshot = s;
 		}
 
 		/** Adds a new process to the end of the queue*/
@@ -157,11 +302,22 @@ public class Process implements Cloneable{
 			if(pq.manyItems == 0) { //if theres nothing to remove
 				return;
 			}
-			pq.dummy.next.prev = dummy.prev;//making PQs first element link to the last element 
-			dummy.prev.next = pq.dummy.next;//making que end link to pq
-			pq.dummy.prev.next = dummy; //linking the end of pq to queues dummy
-			dummy.prev = pq.dummy.prev; //making pqs last element the last element in queue
-			pq.dummy.next = pq.dummy.prev = pq.dummy; // making pq dummy links point to itself
+			if(manyItems == 0 && pq.specFrom < pq.specTo) { //an empty queue can share pq's snapshot as it is
+				spec = pq.spec;
+				specFrom = pq.specFrom;
+				specTo = pq.specTo;
+				front = pq.front == pq.dummy ? dummy : pq.front;
+			}else {
+				pq.materialize();
+			}
+			pq.release();
+			if(pq.dummy.next != pq.dummy) { //splice in pq's linked processes, if it has any
+				pq.dummy.next.prev = dummy.prev;//making PQs first element link to the last element 
+				dummy.prev.next = pq.dummy.next;//making que end link to pq
+				pq.dummy.prev.next = dummy; //linking the end of pq to queues dummy
+				dummy.prev = pq.dummy.prev; //making pqs last element the last element in queue
+				pq.dummy.next = pq.dummy.prev = pq.dummy; // making pq dummy links point to itself
+			}
 
 			manyItems += pq.manyItems; //incrementing count by ammount we added
 			pq.manyItems = 0;//making the PQ size 0 since we removed everything from it 
@@ -172,6 +328,10 @@ public class Process implements Cloneable{
 		/** Returns the next process to be polled from this queue.*/
 		@Override
 		public Process peek(){
+			if(front == dummy && specFrom < specTo) { //copy the first process out of the snapshot so it stays the same
+				front = copyOf(spec[specFrom++]);
+				linkAfter(dummy, front);
+			}
 			Process p = dummy.next;
 			if(p == dummy) {//since dummy points at itself we know if the element after the dummy is the dummy, we only have the dummy
 				return null;
@@ -183,10 +343,18 @@ public class Process implements Cloneable{
 		@Override
 		public Process poll() {
 			Process result = null;
+			if(front == dummy && specFrom < specTo) { //next up is a process of the snapshot
+				result = copyOf(spec[specFrom++]);
+				if(specFrom == specTo) release();
+				manyItems--;
+				version++;
+				return result;
+			}
 			if(dummy.next == dummy) {//since dummy points at itself we know if the element after the dummy is the dummy, we only have the dummy
 				return null;
 			}
 			result = dummy.next;//saving node to return 
+			if(result == front) front = dummy; //the snapshot is next up now
 			dummy.next = dummy.next.next; //skipping over result
 			dummy.next.prev = dummy;//setting prev links to fully remove result
 			result.next = result.prev = null;//setting result links to null to show its removal from the queue
@@ -202,7 +370,10 @@ public class Process implements Cloneable{
 			return manyItems;//returning amount of items
 		}
 
-		/** Returns a new copy of this queue.*/
+		/** Returns a new copy of this queue in O(1): processes are copied, with
+		 *  no progress, when the copy first hands them out. Changing a process
+		 *  of this queue (its priority, say) after this queue was cloned or last
+		 *  changed does not reach the copy.*/
 		@Override
 		public Queue clone(){
 
@@ -214,24 +385,21 @@ public class Process implements Cloneable{
 			}
 
 			Process newDummy = new Process();//newDummy
-			Process prev = newDummy;//lag method
-
-			for(Process p = dummy.next; p.next!= dummy.next; p = p.next) { // for loop going through all the elements
-				Process clone = new Process(p.name, p.totalInstructions);//msking a copy of the node we are on 
-				prev.next = clone;//making clone the one after the one we just copied
-				clone.prev = prev;//setting the prev links of above operation 
-				prev = clone;//incrementing prev
-			}
-			prev.next = newDummy;//after we copy we add new dummy
-			newDummy.prev = prev; //setting prev links
-			copy.dummy = newDummy;//making the dummy NewDummy
+			newDummy.next = newDummy.prev = newDummy;
+			copy.dummy = copy.front = newDummy;
+			copy.spec = copy.snapshot = snapshot(); //both share this queue's snapshot
+			copy.specFrom = 0;
+			copy.specTo = copy.spec.length;
 			copy.manyItems = manyItems;//copying over the ammount of items 
+			copy.version = copy.snapshotVersion = 0;
+			if(copy.specTo == 0) copy.release();
 			return copy;
 		}
 
 		/** Returns a new (remove-less) iterator over this queue.*/
 		@Override
 		public Iterator<Process> iterator(){
+			materialize();
 			return new MyIterator();}
 
 
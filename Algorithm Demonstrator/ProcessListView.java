@@ -0,0 +1,189 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+
+/** A list of processes painted as rows of a name and a progress bar, for
+ *  scenarios far too large for a component per process. Only the rows in
+ *  view are ever painted or looked at: the list keeps what it last showed
+ *  of each visible row, and the driver calls sample() at frame rate to
+ *  repaint just the rows whose state changed since. Put it in a JScrollPane.
+ *
+ *  The rows come from a Rows model, which is either the live processes of
+ *  a scheduler or a run replayed from a trace at some pulse. */
+public class ProcessListView extends JComponent implements Scrollable{
+
+	private static final long serialVersionUID = 1L;
+	private static final Color ACTIVE = new Color(102,204,204);
+	private static final Color INACTIVE = new Color(102,153,204);
+	private static final Color TRACK = new Color(238,238,238);
+	private static final int ROW = 22, VISIBLE_ROWS = 20;
+
+	/** The state of the processes shown, one row per process. */
+	public interface Rows{
+
+		/** Gets the number of rows. */
+		int size();
+
+		/** Gets the name of the process of a row. */
+		String getName(int row);
+
+		/** Gets the total amount of instructions of the process of a row. */
+		int getTotal(int row);
+
+		/** Gets the amount of finished instructions of the process of a row. */
+		int getFinished(int row);
+
+		/** Checks if the process of a row is on its CPU. */
+		boolean isActive(int row);
+
+		/** Gets the pulse the process of a row finished at, or -1 if it has not. */
+		int getCompletionPulse(int row);
+	}
+
+	/** The processes of a scheduler as they are now. */
+	public static class Live implements Rows{
+		private final Process[] processes;
+		private final CPU cpu;
+
+		/** Instantiates rows of the processes, which run on the given CPU. */
+		public Live(Process[] processes, CPU cpu){
+			this.processes = processes;
+			this.cpu = cpu;}
+
+		public int size(){return processes.length;}
+		public String getName(int row){return processes[row].getName();}
+		public int getTotal(int row){return processes[row].getTotal();}
+		public int getFinished(int row){return processes[row].getFinished();}
+		public boolean isActive(int row){return !processes[row].isDone() && cpu.getLastProcess() == processes[row];}
+		public int getCompletionPulse(int row){return processes[row].isDone() ? processes[row].getCompletionPulse() : -1;}
+	}
+
+	/** The processes of a recorded run as they were after some pulse; row i
+	 *  is process i of the trace. */
+	public static class Replayed implements Rows{
+		private final TraceReplay trace;
+		private final int pulse;
+
+		/** Instantiates rows of the trace after the given pulse. */
+		public Replayed(TraceReplay trace, int pulse){
+			this.trace = trace;
+			this.pulse = pulse;}
+
+		public int size(){return trace.getProcesses();}
+		public String getName(int row){return trace.getName(row);}
+		public int getTotal(int row){return trace.getTotal(row);}
+		public int getFinished(int row){return trace.getFinished(row, pulse);}
+		public boolean isActive(int row){return getCompletionPulse(row) < 0 && trace.isRunning(row, pulse);}
+		public int getCompletionPulse(int row){
+			int c = trace.getCompletionPulse(row);
+			return c <= pulse ? c : -1;}
+	}
+
+	private Rows rows;
+	private int[] shown = new int[0]; // finished instructions last painted per visible row, -1 if active is set
+	private int shownFirst;
+
+	/** Instantiates a list of the given rows. */
+	public ProcessListView(Rows rows){
+		setOpaque(true);
+		setBackground(Color.WHITE);
+		setRows(rows);}
+
+	/** Shows other rows, such as a replay, repainting everything in view. */
+	public void setRows(Rows r){
+		boolean resized = rows == null || rows.size() != r.size();
+		rows = r;
+		if (resized) revalidate();
+		repaint();}
+
+	/** Gets the rows shown. */
+	public Rows getRows(){return rows;}
+
+	/** Repaints the rows in view whose state changed since they were last painted. */
+	public void sample(){
+		Rectangle view = getVisibleRect();
+		int first = view.y / ROW, last = Math.min(rows.size(), (view.y + view.height + ROW - 1) / ROW);
+		if (first != shownFirst || last - first != shown.length){ // scrolled or resized: paint() catches up
+			repaint();
+			return;}
+		int from = -1, to = -1;
+		for (int row = first; row < last; row++){
+			if (state(row) == shown[row - first]) continue;
+			if (from < 0) from = row;
+			to = row;}
+		if (from >= 0) repaint(0, from * ROW, getWidth(), (to - from + 1) * ROW);
+	}
+
+	/** Packs what a row shows into an int: the finished instructions, negated when active. */
+	private int state(int row){
+		int finished = rows.getFinished(row);
+		return rows.isActive(row) ? -1 - finished : finished;}
+
+	@Override
+	protected void paintComponent(Graphics g){
+		Rectangle clip = g.getClipBounds();
+		g.setColor(getBackground());
+		g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+		Rectangle view = getVisibleRect();
+		int first = view.y / ROW, last = Math.min(rows.size(), (view.y + view.height + ROW - 1) / ROW);
+		if (first != shownFirst || last - first != shown.length){
+			shown = new int[Math.max(0, last - first)];
+			Arrays.fill(shown, Integer.MIN_VALUE);
+			shownFirst = first;}
+
+		FontMetrics fm = g.getFontMetrics();
+		int half = getWidth() / 2;
+		for (int row = Math.max(first, clip.y / ROW); row < last && row * ROW < clip.y + clip.height; row++){
+			int y = row * ROW, baseline = y + (ROW + fm.getAscent() - fm.getDescent()) / 2;
+			String name = rows.getName(row);
+			g.setColor(Color.BLACK);
+			g.drawString(name, (half - fm.stringWidth(name)) / 2, baseline);
+
+			// The bar: track, filled part, then its text in white over the fill and black elsewhere
+			int state = state(row), finished = state < 0 ? -1 - state : state, total = rows.getTotal(row);
+			int completion = rows.getCompletionPulse(row);
+			int x = half + 2, w = getWidth() - half - 4, h = ROW - 4, fill = (int) ((long) w * finished / total);
+			g.setColor(TRACK);
+			g.fillRect(x, y + 2, w, h);
+			g.setColor(state < 0 ? ACTIVE : INACTIVE);
+			g.fillRect(x, y + 2, fill, h);
+			g.setColor(Color.GRAY);
+			g.drawRect(x, y + 2, w - 1, h - 1);
+			String text = completion >= 0 ? "Finished @ "+completion : finished+"/"+total;
+			int tx = x + (w - fm.stringWidth(text)) / 2;
+			Graphics filled = g.create(x, y, fill, ROW);
+			filled.setColor(Color.WHITE);
+			filled.drawString(text, tx - x, baseline - y);
+			filled.dispose();
+			Graphics empty = g.create(x + fill, y, w - fill, ROW);
+			empty.setColor(Color.DARK_GRAY);
+			empty.drawString(text, tx - x - fill, baseline - y);
+			empty.dispose();
+			if (row >= shownFirst && row - shownFirst < shown.length) shown[row - shownFirst] = state;
+		}
+	}
+
+	@Override
+	public Dimension getPreferredSize(){return new Dimension(300, rows.size() * ROW);}
+
+	public Dimension getPreferredScrollableViewportSize(){
+		return new Dimension(300, Math.min(rows.size(), VISIBLE_ROWS) * ROW);}
+
+	public int getScrollableUnitIncrement(Rectangle visible, int orientation, int direction){
+		return orientation == SwingConstants.VERTICAL ? ROW : 10;}
+
+	public int getScrollableBlockIncrement(Rectangle visible, int orientation, int direction){
+		return orientation == SwingConstants.VERTICAL ? Math.max(ROW, visible.height / ROW * ROW) : visible.width;}
+
+	public boolean getScrollableTracksViewportWidth(){return true;}
+
+	public boolean getScrollableTracksViewportHeight(){return false;}
+}
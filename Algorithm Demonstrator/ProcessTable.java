@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+
+/** Processes stored as a struct of arrays: row i of every array is one
+ *  process. Compared to linked Process objects this takes a few ints per
+ *  process instead of an object header, links and bookkeeping fields, and
+ *  a scheduler walking it touches contiguous memory. Rows are never
+ *  removed; the table grows by doubling. */
+public class ProcessTable{
+
+	private String[] names;
+	private int[] total, finished, arrival, completion;
+	private int size;
+
+	/** Instantiates an empty table. */
+	public ProcessTable(){this(16);}
+
+	/** Instantiates an empty table with room for capacity processes. */
+	public ProcessTable(int capacity){
+		if (capacity < 1) capacity = 1;
+		names = new String[capacity];
+		total = new int[capacity];
+		finished = new int[capacity];
+		arrival = new int[capacity];
+		completion = new int[capacity];}
+
+	/** Adds a process that arrives at pulse 0 and returns its row. */
+	public int add(String name, int totalIns){return add(name, totalIns, 0);}
+
+	/** Adds a process and returns its row. */
+	public int add(String name, int totalIns, int arrivalPulse){
+		if (name == null) throw new NullPointerException("name must not be null");
+		if (totalIns < 1) throw new IllegalArgumentException("a process needs at least one instruction");
+		if (arrivalPulse < 0) throw new IllegalArgumentException("arrival must not be negative: "+arrivalPulse);
+		if (size == total.length) grow();
+		names[size] = name;
+		total[size] = totalIns;
+		arrival[size] = arrivalPulse;
+		completion[size] = -1;
+		return size++;
+	}
+
+	/** Adds a process with the name, instructions and arrival of p and returns its row. */
+	public int add(Process p){return add(p.getName(), p.getTotal(), p.getArrival());}
+
+	private void grow(){
+		int n = total.length*2;
+		names = Arrays.copyOf(names, n);
+		total = Arrays.copyOf(total, n);
+		finished = Arrays.copyOf(finished, n);
+		arrival = Arrays.copyOf(arrival, n);
+		completion = Arrays.copyOf(completion, n);}
+
+	/** Gets the number of processes. */
+	public int size(){return size;}
+
+	/** Gets the name of a process. */
+	public String getName(int row){return names[check(row)];}
+
+	/** Gets the total amount of instructions of a process. */
+	public int getTotal(int row){return total[check(row)];}
+
+	/** Gets the amount of finished instructions of a process. */
+	public int getFinished(int row){return finished[check(row)];}
+
+	/** Gets the amount of instructions a process has left. */
+	public int getRemaining(int row){return total[check(row)] - finished[row];}
+
+	/** Gets the pulse at which a process arrives. */
+	public int getArrival(int row){return arrival[check(row)];}
+
+	/** Gets the pulse at which a process finished, or -1 if it has not. */
+	public int getCompletionPulse(int row){return completion[check(row)];}
+
+	/** Checks if a process is completed. */
+	public boolean isDone(int row){return finished[check(row)] == total[row];}
+
+	/** Performs one instruction of a process. */
+	void perform(int row){finished[row]++;}
+
+	/** Records the pulse at which a process finished. */
+	void complete(int row, int pulse){completion[row] = pulse;}
+
+	private int check(int row){
+		if (row < 0 || row >= size) throw new IndexOutOfBoundsException("no process at row "+row);
+		return row;}
+
+	/** A FIFO ring buffer of rows, growing by doubling. */
+	static class RowQueue{
+		private int[] rows = new int[16];
+		private int head, count;
+
+		void offer(int row){
+			if (count == rows.length){
+				int[] bigger = new int[rows.length*2];
+				System.arraycopy(rows, head, bigger, 0, rows.length - head);
+				System.arraycopy(rows, 0, bigger, rows.length - head, head);
+				rows = bigger;
+				head = 0;}
+			rows[(head + count++) & (rows.length-1)] = row;}
+
+		/** Removes and returns the first row, or -1 if there is none. */
+		int poll(){
+			if (count == 0) return -1;
+			int row = rows[head];
+			head = (head+1) & (rows.length-1);
+			count--;
+			return row;}
+
+		int size(){return count;}
+
+		boolean isEmpty(){return count == 0;}
+	}
+}
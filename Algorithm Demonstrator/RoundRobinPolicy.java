@@ -0,0 +1,37 @@
+
+/** Round Robin: the running process goes to the back of the ready
+ *  queue after every quantum instructions (one by default). */
+public class RoundRobinPolicy implements SchedulingPolicy{
+
+	private final Process.Queue ready = new Process.Queue();
+	private final int quantum;
+
+	/** Instantiates a policy that preempts after every instruction. */
+	public RoundRobinPolicy(){this(1);}
+
+	/** Instantiates a policy that preempts after quantum instructions. */
+	public RoundRobinPolicy(int quantum){
+		if (quantum < 1) throw new IllegalArgumentException("quantum must be positive");
+		this.quantum = quantum;}
+
+	/** Gets the quantum. */
+	public int getQuantum(){return quantum;}
+
+	public void offer(Process p, int pulse){ready.offer(p);}
+
+	@Override
+	public void offerAll(Process.Queue pq, int pulse){ready.takeAll(pq);}
+
+	public Process poll(int pulse){return ready.poll();}
+
+	public boolean preempt(Process running, int slice, int pulse){return slice >= quantum;}
+
+	@Override
+	public int runLength(Process running, int slice, int pulse){return Math.max(1, quantum - slice);}
+
+	public void requeue(Process p, int slice, int pulse){ready.offer(p);}
+
+	public int size(){return ready.size();}
+
+	public String getName(){return quantum == 1 ? "Round Robin" : "Round Robin (q="+quantum+")";}
+}
@@ -0,0 +1,273 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+
+
+/** A compact binary snapshot of a parsed scenario file, so that repeated
+ *  runs over the same file skip parsing its text. The snapshot starts with
+ *  the size and modification time of the file it was made from and is
+ *  rebuilt as soon as those no longer match. After the header it is a
+ *  stream of tagged records closed by an end tag: a scenario is its name,
+ *  a process its name, instructions and arrival, and a process doing I/O
+ *  its name, arrival, bursts and devices. Names are length-prefixed
+ *  UTF-8 and numbers varints, so replaying is a single pass of copying with
+ *  nothing to search for or validate, and it streams like the text does. */
+public class ScenarioCache{
+
+	private static final int MAGIC = 0x5343454E; // "SCEN"
+	private static final int VERSION = 2; // 2 added PROCESS_IO
+	private static final int END = 0, SCENARIO = 1, PROCESS = 2, PROCESS_IO = 3;
+	private static final int BUFFER = 1 << 16;
+
+	private ScenarioCache(){}
+
+	/** Reads every scenario of the source file, keyed by name in file order,
+	 *  through the cache file next to it. */
+	public static Map<String, Process.Queue> read(File source, File cache) throws IOException, ParseException{
+		ScenarioReader.Collector c = new ScenarioReader.Collector();
+		parse(source, cache, c);
+		return c.getScenarios();
+	}
+
+	/** Streams every scenario of the source file into the handler. If the cache
+	 *  is up to date it is replayed instead of the text; otherwise the text is
+	 *  parsed and the cache rewritten on the way. Failing to write the cache
+	 *  is not an error, it just stays out of date. */
+	public static void parse(File source, File cache, ScenarioReader.Handler h) throws IOException, ParseException{
+		long length = source.length(), modified = source.lastModified();
+		if (cache.isFile() && replay(cache, length, modified, h)) return;
+
+		File temp = new File(cache.getPath()+".tmp");
+		Writer w = new Writer(temp, h);
+		try {
+			w.header(length, modified);
+			ScenarioReader.parse(source, w);
+			if (w.finish()) move(temp, cache);}
+		finally {w.discard();}
+	}
+
+	/** Feeds the records of the cache to the handler if its header matches
+	 *  the source. Returns false, having fed nothing, if it does not. */
+	private static boolean replay(File cache, long length, long modified, ScenarioReader.Handler h) throws IOException, ParseException{
+		try (Reader in = new Reader(new FileInputStream(cache))){
+			if (in.fixed(4) != MAGIC || in.fixed(4) != VERSION || in.fixed(8) != length || in.fixed(8) != modified)
+				return false;
+			try {
+				int tag;
+				while ((tag = (int) in.fixed(1)) != END){
+					if (tag == SCENARIO) h.scenario(in.text());
+					else if (tag == PROCESS) h.process(in.text(), in.varint(), in.varint());
+					else if (tag == PROCESS_IO) processIO(in, h);
+					else throw new IOException("unknown record "+tag);}
+			}
+			catch (IOException e){throw new IOException("Corrupt scenario cache "+cache+" ("+e.getMessage()+"), delete it", e);}
+			return true;
+		}
+		catch (EOFException e){return false;} // cut off in the header: rebuild it
+	}
+
+	/** Feeds a process record with I/O bursts to the handler. */
+	private static void processIO(Reader in, ScenarioReader.Handler h) throws IOException, ParseException{
+		String name = in.text();
+		int arrival = in.varint(), n = in.varint();
+		if (n < 3 || n % 2 == 0) throw new IOException("malformed bursts");
+		int[] bursts = new int[n];
+		for (int i=0; i < n; i++)
+			bursts[i] = in.varint();
+		String[] devices = new String[n/2];
+		for (int i=0; i < devices.length; i++)
+			devices[i] = in.text();
+		h.process(name, bursts, devices, arrival);
+	}
+
+	/** Replaces the cache with the new snapshot, atomically where possible. */
+	private static void move(File temp, File cache){
+		try {
+			try {Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);}
+			catch (AtomicMoveNotSupportedException e){Files.move(temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING);}
+		}
+		catch (IOException e){temp.delete();} // the cache stays out of date
+	}
+
+	/** Decodes a snapshot from a buffer refilled a block at a time. */
+	private static class Reader implements AutoCloseable{
+		private final InputStream in;
+		private byte[] buf = new byte[BUFFER];
+		private int pos, limit;
+
+		Reader(InputStream in){this.in = in;}
+
+		/** Makes sure the next n bytes are in the buffer. */
+		private void need(int n) throws IOException{
+			if (limit - pos >= n) return;
+			if (n > buf.length) buf = Arrays.copyOf(buf, Math.max(n, buf.length*2));
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+			while (limit < n){
+				int r = in.read(buf, limit, buf.length - limit);
+				if (r < 0) throw new EOFException("snapshot ends early");
+				limit += r;}
+		}
+
+		/** Reads a big-endian number of the given byte count. */
+		long fixed(int bytes) throws IOException{
+			need(bytes);
+			long v = 0;
+			for (int i=0; i < bytes; i++)
+				v = v << 8 | (buf[pos++] & 0xFF);
+			return v;}
+
+		int varint() throws IOException{
+			int v = 0;
+			for (int shift = 0; shift < 35; shift += 7){
+				if (pos == limit) need(1);
+				byte b = buf[pos++];
+				v |= (b & 0x7F) << shift;
+				if (b >= 0) return v;}
+			throw new IOException("malformed number");}
+
+		String text() throws IOException{
+			int n = varint();
+			if (n < 0) throw new IOException("malformed name");
+			need(n);
+			String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+			pos += n;
+			return s;}
+
+		public void close() throws IOException{in.close();}
+	}
+
+	/** Passes records on to a handler while writing them to the snapshot.
+	 *  The first write that fails drops the snapshot; parsing carries on. */
+	private static class Writer implements ScenarioReader.Handler{
+		private final File file;
+		private final ScenarioReader.Handler handler;
+		private OutputStream out;
+		private byte[] buf = new byte[BUFFER];
+		private int pos;
+
+		Writer(File f, ScenarioReader.Handler h){
+			file = f;
+			handler = h;
+			try {out = new FileOutputStream(f);}
+			catch (IOException e){out = null;}
+		}
+
+		private void flush() throws IOException{
+			out.write(buf, 0, pos);
+			pos = 0;}
+
+		/** Makes room for the next n bytes. */
+		private void room(int n) throws IOException{
+			if (buf.length - pos >= n) return;
+			flush();
+			if (n > buf.length) buf = new byte[n];}
+
+		private void fixed(long v, int bytes){
+			for (int i = bytes-1; i >= 0; i--)
+				buf[pos++] = (byte) (v >>> 8*i);}
+
+		private void varint(int v){
+			while ((v & ~0x7F) != 0){
+				buf[pos++] = (byte) (v | 0x80);
+				v >>>= 7;}
+			buf[pos++] = (byte) v;}
+
+		private void text(byte[] s){
+			varint(s.length);
+			System.arraycopy(s, 0, buf, pos, s.length);
+			pos += s.length;}
+
+		void header(long length, long modified){
+			if (out == null) return;
+			try {
+				room(24);
+				fixed(MAGIC, 4);
+				fixed(VERSION, 4);
+				fixed(length, 8);
+				fixed(modified, 8);}
+			catch (IOException e){discard();}
+		}
+
+		public void scenario(String name) throws ParseException{
+			handler.scenario(name);
+			if (out == null) return;
+			byte[] s = name.getBytes(StandardCharsets.UTF_8);
+			try {
+				room(s.length + 6);
+				fixed(SCENARIO, 1);
+				text(s);}
+			catch (IOException e){discard();}
+		}
+
+		public void process(String name, int total, int arrival) throws ParseException{
+			handler.process(name, total, arrival);
+			if (out == null) return;
+			byte[] s = name.getBytes(StandardCharsets.UTF_8);
+			try {
+				room(s.length + 16);
+				fixed(PROCESS, 1);
+				text(s);
+				varint(total);
+				varint(arrival);}
+			catch (IOException e){discard();}
+		}
+
+		@Override
+		public void process(String name, int[] bursts, String[] devices, int arrival) throws ParseException{
+			handler.process(name, bursts, devices, arrival);
+			if (out == null) return;
+			byte[] s = name.getBytes(StandardCharsets.UTF_8);
+			byte[][] d = new byte[devices.length][];
+			int size = s.length + 16 + 5*bursts.length;
+			for (int i=0; i < d.length; i++)
+				size += (d[i] = devices[i].getBytes(StandardCharsets.UTF_8)).length + 5;
+			try {
+				room(size);
+				fixed(PROCESS_IO, 1);
+				text(s);
+				varint(arrival);
+				varint(bursts.length);
+				for (int b: bursts)
+					varint(b);
+				for (byte[] device: d)
+					text(device);}
+			catch (IOException e){discard();}
+		}
+
+		/** Closes the snapshot; returns true if it is complete. */
+		boolean finish(){
+			if (out == null) return false;
+			try {
+				room(1);
+				fixed(END, 1);
+				flush();
+				out.close();
+				out = null;
+				return true;}
+			catch (IOException e){
+				discard();
+				return false;}
+		}
+
+		/** Drops an unfinished snapshot. */
+		void discard(){
+			if (out == null) return;
+			try {out.close();}
+			catch (IOException e){}
+			out = null;
+			file.delete();}
+	}
+}
@@ -0,0 +1,296 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/** Parses the scenario file shared by the GUI driver and the batch runner.
+ *  A scenario starts at a line "scenario NAME" and is followed by lines
+ *  of the form "process NAME TOTAL_INSTRUCTIONS [@ARRIVAL]"; a process
+ *  without an arrival pulse is ready from the start. A process that does
+ *  I/O gives its CPU bursts with an I/O burst "DEVICE:PULSES" between every
+ *  two, as in "process copy 4 disk:10 2 net:3 1 @5". Blank lines and
+ *  lines starting with '#' are skipped, anything else is an error.
+ *  Numbers are read as Integer.decode reads them, so "0x1F", "#1F" and
+ *  "037" are all 31.
+ *
+ *  The parser streams: it scans raw bytes a buffer at a time, never
+ *  holds more than one line, and hands every scenario and process to a
+ *  Handler as soon as it is read, so files far larger than memory can be
+ *  parsed at disk speed. Errors carry the line and column they were found at. */
+public class ScenarioReader{
+
+	/** Longest line accepted, which bounds the memory a malformed file can take. */
+	private static final int MAX_LINE = 1 << 20;
+
+	private static final byte[] SCENARIO = "scenario".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] PROCESS = "process".getBytes(StandardCharsets.US_ASCII);
+
+	/** Receives the contents of a scenario file in order. A handler may throw
+	 *  a ParseException to reject something; it is reported at the line read. */
+	public interface Handler{
+
+		/** Called at the start of every scenario. */
+		void scenario(String name) throws ParseException;
+
+		/** Called for every process of the current scenario. */
+		void process(String name, int total, int arrival) throws ParseException;
+
+		/** Called instead of process(name, total, arrival) for every process
+		 *  that does I/O, with its bursts as Process(name, bursts, devices)
+		 *  takes them. Handlers that cannot hold bursts reject them. */
+		default void process(String name, int[] bursts, String[] devices, int arrival) throws ParseException{
+			throw new ParseException("I/O bursts are not supported here", 0);}
+	}
+
+	/** A malformed scenario file, with the line and column (both from 1) of the problem. */
+	public static class SyntaxException extends ParseException{
+		private static final long serialVersionUID = 1L;
+		private final int line, column;
+
+		public SyntaxException(String message, int line, int column){
+			super("line "+line+", column "+column+": "+message, column);
+			this.line = line;
+			this.column = column;}
+
+		/** Gets the line of the problem. */
+		public int getLine(){return line;}
+
+		/** Gets the column of the problem, in bytes from the start of the line. */
+		public int getColumn(){return column;}
+	}
+
+	private final InputStream in;
+	private final Handler handler;
+	private byte[] buf = new byte[1 << 16];
+	private int[] bursts = new int[8]; // of the line being read, last first
+	private String[] devices = new String[4];
+	private int line, scenarioLine, processes = -1;
+
+	private ScenarioReader(InputStream in, Handler h){
+		this.in = in;
+		handler = h;}
+
+	/** Streams every scenario in the file into the handler. */
+	public static void parse(File file, Handler h) throws IOException, ParseException{
+		try (InputStream in = new FileInputStream(file)){
+			parse(in, h);}
+	}
+
+	/** Streams every scenario in the input into the handler. The stream is read
+	 *  in large blocks, so it does not need to be buffered, and is not closed. */
+	public static void parse(InputStream in, Handler h) throws IOException, ParseException{
+		new ScenarioReader(in, h).run();}
+
+	/** Reads every scenario in the file, keyed by name in file order. */
+	public static Map<String, Process.Queue> read(File file) throws IOException, ParseException{
+		Collector c = new Collector();
+		parse(file, c);
+		return c.getScenarios();
+	}
+
+	/** Splits the input into lines without copying them out of the buffer. */
+	private void run() throws IOException, ParseException{
+		int start = 0, scan = 0, limit = 0;
+		while (true){
+			while (scan < limit && buf[scan] != '\n') scan++;
+			if (scan < limit){
+				line(start, scan);
+				start = ++scan;
+				continue;}
+
+			// No full line left: move the partial one to the front and read more
+			if (scan - start >= MAX_LINE) throw new SyntaxException("line longer than "+MAX_LINE+" bytes", line+1, 1);
+			if (start > 0){
+				System.arraycopy(buf, start, buf, 0, limit - start);
+				limit -= start;
+				scan -= start;
+				start = 0;}
+			else if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length*2);
+			int n = in.read(buf, limit, buf.length - limit);
+			if (n < 0) break;
+			limit += n;}
+		if (start < limit) line(start, limit);
+		endScenario();
+		if (processes < 0) throw new SyntaxException("no scenarios in file", line+1, 1);
+	}
+
+	/** Parses one line, given as the bytes from start up to end. */
+	private void line(int start, int end) throws ParseException{
+		line++;
+		if (end > start && buf[end-1] == '\r') end--;
+		int i = skipBlanks(start, end);
+		if (i == end || buf[i] == '#') return;
+
+		int keyEnd = i;
+		while (keyEnd < end && !isBlank(buf[keyEnd])) keyEnd++;
+		if (matches(i, keyEnd, SCENARIO)){
+			int nameStart = skipBlanks(keyEnd, end), nameEnd = trimEnd(nameStart, end);
+			if (nameStart == nameEnd) throw error("missing scenario name", start, keyEnd);
+			endScenario();
+			scenarioLine = line;
+			processes = 0;
+			try {handler.scenario(text(nameStart, nameEnd));}
+			catch (SyntaxException e){throw e;}
+			catch (ParseException e){throw error(e.getMessage(), start, nameStart);}
+		}
+		else if (matches(i, keyEnd, PROCESS)){
+			if (processes < 0) throw error("process declared before any scenario", start, i);
+
+			// Read the numbers from the back, so the name may contain blanks
+			int tokenEnd = trimEnd(keyEnd, end), tokenStart = tokenStart(keyEnd, tokenEnd), arrival = 0;
+			if (tokenStart < tokenEnd && buf[tokenStart] == '@'){
+				arrival = number(start, tokenStart+1, tokenEnd, "arrival pulse");
+				if (arrival < 0) throw error("arrival pulse is negative", start, tokenStart+1);
+				tokenEnd = trimEnd(keyEnd, tokenStart);
+				tokenStart = tokenStart(keyEnd, tokenEnd);}
+			int total = 0, n = 0;
+			while (true){
+				int cpu = number(start, tokenStart, tokenEnd, "instruction count");
+				if (cpu < 1) throw error("a burst needs at least one instruction", start, tokenStart);
+				if (total + (long) cpu > Integer.MAX_VALUE) throw error("instruction count is too large", start, tokenStart);
+				total += cpu;
+				burst(n++, cpu);
+
+				// An I/O burst comes before this one if the token before is DEVICE:PULSES and a number precedes it
+				int ioEnd = trimEnd(keyEnd, tokenStart), ioStart = tokenStart(keyEnd, ioEnd);
+				int colon = ioStart;
+				while (colon < ioEnd && buf[colon] != ':') colon++;
+				if (colon == ioEnd || colon == ioStart || !isNumber(colon+1, ioEnd)) break;
+				int before = trimEnd(keyEnd, ioStart);
+				if (!isNumber(tokenStart(keyEnd, before), before)) break;
+				int io = number(start, colon+1, ioEnd, "I/O pulses");
+				if (io < 1) throw error("a burst needs at least one pulse", start, colon+1);
+				if (n/2 == devices.length) devices = Arrays.copyOf(devices, devices.length*2);
+				devices[n/2] = text(ioStart, colon);
+				burst(n++, io);
+				tokenEnd = before;
+				tokenStart = tokenStart(keyEnd, tokenEnd);}
+			int nameStart = skipBlanks(keyEnd, tokenStart), nameEnd = trimEnd(nameStart, tokenStart);
+			if (nameStart == nameEnd) throw error("missing process name", start, tokenStart);
+			processes++;
+			try {
+				if (n == 1) handler.process(text(nameStart, nameEnd), total, arrival);
+				else handler.process(text(nameStart, nameEnd), inOrder(n), inOrder(devices, n/2), arrival);}
+			catch (SyntaxException e){throw e;}
+			catch (ParseException e){throw error(e.getMessage(), start, nameStart);}
+		}
+		else throw error("expected \"scenario\" or \"process\"", start, i);
+	}
+
+	/** Keeps the i-th burst of the line from the back. */
+	private void burst(int i, int pulses){
+		if (i == bursts.length) bursts = Arrays.copyOf(bursts, i*2);
+		bursts[i] = pulses;}
+
+	/** Gets the first n bursts read, in the order of the line. */
+	private int[] inOrder(int n){
+		int[] b = new int[n];
+		for (int i=0; i < n; i++)
+			b[i] = bursts[n-1-i];
+		return b;}
+
+	private static String[] inOrder(String[] a, int n){
+		String[] b = new String[n];
+		for (int i=0; i < n; i++)
+			b[i] = a[n-1-i];
+		return b;}
+
+	/** Checks that the scenario being read, if any, has processes. */
+	private void endScenario() throws ParseException{
+		if (processes == 0) throw new SyntaxException("scenario has no processes", scenarioLine, 1);}
+
+	/** Parses an int between from and to as Integer.decode reads it, like the
+	 *  driver always has: with an optional sign, then in hex after "0x", "0X"
+	 *  or "#", in octal after a leading 0, and in decimal otherwise. */
+	private int number(int lineStart, int from, int to, String what) throws ParseException{
+		if (from == to) throw error("missing "+what, lineStart, from);
+		boolean negative = buf[from] == '-';
+		int i = negative || buf[from] == '+' ? from+1 : from;
+		if (i == to) throw error(what+" is not a number", lineStart, i);
+		int radix = radix(i, to);
+		i = digits(i, radix);
+		if (i == to) throw error(what+" is not a number", lineStart, i);
+		long n = 0;
+		for (; i < to; i++){
+			int d = Character.digit(buf[i], radix);
+			if (d < 0) throw error(what+" is not a number", lineStart, i);
+			n = n*radix + d;
+			if (n > Integer.MAX_VALUE + (negative ? 1L : 0L)) throw error(what+" is too large", lineStart, from);}
+		return (int) (negative ? -n : n);
+	}
+
+	/** Checks that number(...) reads the bytes between from and to, but for overflow. */
+	private boolean isNumber(int from, int to){
+		if (from < to && (buf[from] == '-' || buf[from] == '+')) from++;
+		if (from == to) return false;
+		int radix = radix(from, to);
+		from = digits(from, radix);
+		if (from == to) return false;
+		for (int i=from; i < to; i++)
+			if (Character.digit(buf[i], radix) < 0) return false;
+		return true;}
+
+	/** Gets the radix of the unsigned number between from and to, which is not empty. */
+	private int radix(int from, int to){
+		if (buf[from] == '#' || to - from > 2 && buf[from] == '0' && (buf[from+1] == 'x' || buf[from+1] == 'X')) return 16;
+		return to - from > 1 && buf[from] == '0' ? 8 : 10;}
+
+	/** Skips the prefix that gave an unsigned number at from its radix. */
+	private int digits(int from, int radix){
+		if (radix == 16) return buf[from] == '#' ? from+1 : from+2;
+		return radix == 8 ? from+1 : from;}
+
+	private SyntaxException error(String message, int lineStart, int at){
+		return new SyntaxException(message, line, at - lineStart + 1);}
+
+	private String text(int from, int to){return new String(buf, from, to - from, StandardCharsets.UTF_8);}
+
+	private boolean matches(int from, int to, byte[] word){
+		return to - from == word.length && Arrays.equals(buf, from, to, word, 0, word.length);}
+
+	private static boolean isBlank(byte b){return b == ' ' || b == '\t';}
+
+	private int skipBlanks(int from, int to){
+		while (from < to && isBlank(buf[from])) from++;
+		return from;}
+
+	private int trimEnd(int from, int to){
+		while (to > from && isBlank(buf[to-1])) to--;
+		return to;}
+
+	/** Finds the start of the last token ending at to. */
+	private int tokenStart(int from, int to){
+		while (to > from && !isBlank(buf[to-1])) to--;
+		return to;}
+
+	/** Collects scenarios into queues of processes, rejecting duplicate names. */
+	static class Collector implements Handler{
+		private final Map<String, Process.Queue> scenarios = new LinkedHashMap<>();
+		private Process.Queue newest;
+
+		public void scenario(String name) throws ParseException{
+			if (scenarios.containsKey(name))
+				throw new ParseException("duplicate scenario name: "+name, 0);
+			scenarios.put(name, newest = new Process.Queue());}
+
+		public void process(String name, int total, int arrival){
+			Process p = new Process(name, total);
+			p.setArrival(arrival);
+			newest.offer(p);}
+
+		@Override
+		public void process(String name, int[] bursts, String[] devices, int arrival){
+			Process p = new Process(name, bursts, devices);
+			p.setArrival(arrival);
+			newest.offer(p);}
+
+		/** Gets the scenarios collected so far, keyed by name in file order. */
+		Map<String, Process.Queue> getScenarios(){return scenarios;}
+	}
+}
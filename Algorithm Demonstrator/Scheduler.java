@@ -1,27 +1,48 @@
-
 import Process.Queue;
 
-public class Scheduler{
+public class Scheduler implements Machine{
 
 	private CPU cpu;
-	private boolean roundRobin;
-	private Queue ready, done;
+	private SchedulingPolicy policy;
+	private Queue done;
+	private int pulse, slice;
+	private SchedulerListener listener;
+	private Metrics metrics = new Metrics(1);
+	private Devices devices = new Devices();
+	private Workload workload;
+	private Process upcoming;
+	private boolean keepDone = true;
 
 	/** Instantiates a new scheduler with a boolean denoting type.	 */
 	public Scheduler(boolean rr){
-		cpu = new CPU();
-		ready = new Queue();
+		this(rr ? new RoundRobinPolicy() : new FifoPolicy());}
+
+	/** Instantiates a new scheduler that asks the given policy what to run.	 */
+	public Scheduler(SchedulingPolicy p){this(p, 0);}
+
+	/** Instantiates a new scheduler whose CPU spends switchCost pulses per context switch.	 */
+	public Scheduler(SchedulingPolicy p, int switchCost){
+		if (p == null) throw new NullPointerException("policy must not be null");
+		cpu = new CPU(switchCost);
 		done = new Queue();
-		roundRobin = rr;}
+		policy = p;}
 
 	/** Schedules a new process in the ready queue.	 */
-	public void schedule(Process p){ready.offer(p);}
+	public void schedule(Process p){policy.offer(p, pulse);}
 
 	/** Schedules all processes from the parameter queue into the ready queue.	 */
-	public void scheduleAll(Queue pq){ready.takeAll(pq);}
+	public void scheduleAll(Queue pq){policy.offerAll(pq, pulse);}
+
+	/** Sets the workload whose processes are scheduled on the pulse they arrive.	 */
+	public void setWorkload(Workload w){
+		workload = w;
+		upcoming = w == null ? null : w.next();}
 
-	/** Gets the ready queue.	 */
-	public Queue getReadyQueue(){return ready;}
+	/** Sets whether finished processes are kept in the done queue.	 */
+	public void setKeepDone(boolean keep){keepDone = keep;}
+
+	/** Gets the scheduling policy, which holds the ready processes.	 */
+	public SchedulingPolicy getPolicy(){return policy;}
 
 	/** Gets the done queue.	 */
 	public Queue getDoneQueue(){return done;}
@@ -29,37 +50,79 @@ public class Scheduler{
 	/** Gets the CPU.	 */
 	public CPU getCPU(){return cpu;}
 
-	/** Checks if there are any processes left in the ready queue.	 */
-	public boolean isDone(){return ready.isEmpty() && !cpu.hasProcess();}
+	/** Gets the throughput, latency, utilization and queue length measurements.	 */
+	public Metrics getMetrics(){return metrics;}
+
+	/** Gets the I/O devices and the processes blocked on them.	 */
+	public Devices getDevices(){return devices;}
+
+	/** Sets the listener told about loads, unloads and completions (may be null).	 */
+	public void setListener(SchedulerListener l){listener = l;}
+
+	/** Gets the number of pulses this scheduler has been stepped.	 */
+	public int getPulse(){return pulse;}
+
+	/** Checks if there are any processes left in the ready queue, blocked or still to arrive.	 */
+	public boolean isDone(){return upcoming == null && policy.isEmpty() && !cpu.hasProcess() && devices.isEmpty();}
 
 	/** Executed at every pulse of the driver's clock.
+	 *  First, processes of the workload that arrived by the last pulse become ready,
+	 *  then those whose I/O was over by the last pulse.
 	 *  If the CPU has no process and there are some left in this
-	 *  scheduler's ready queue, load the CPU with a process.
-	 *  Call step on the CPU.
-	 *  If the process in the CPU is done, then offer it to the
-	 *  done queue. Otherwise, if this is a Round Robin scheduler,
-	 *  unload it from the CPU and offer it back to ready queue.
+	 *  scheduler's ready queue, load the CPU with the process the
+	 *  policy picks. Call step on the CPU; while it is switching
+	 *  contexts nothing else happens. If the process in the CPU is done, then offer it to the
+	 *  done queue. If it finished a CPU burst, unload it and block it on
+	 *  its device. Otherwise, if the policy says so, unload it from
+	 *  the CPU and give it back to the policy.
 	 */
 	public void step(){
+		pulse++;
+		admit();
+		metrics.tick(pulse, policy.size());
 
-		if(cpu.hasProcess()) { //if theres a process in the cpu
-			cpu.step();//Execute it 
-		}else {
-			cpu.load(ready.poll()); //if not, remove from ready and load into cpu
-			cpu.step();//Execute it 
+		if(!cpu.hasProcess()) { //if theres no process in the cpu
+			Process next = policy.isEmpty() ? null : policy.poll(pulse); //ask the policy which one runs next
+			if (next == null) return; //nothing is ready, the cpu idles
+			if (cpu.load(next)) metrics.switched();
+			if (next.getFinished() == 0) metrics.started(next.getArrival(), pulse);
+			slice = 0;
+			if (listener != null) listener.loaded(next, pulse);
 		}
-		//have a 
-		if(roundRobin) { //if we have a round robin 
-			if(cpu.getProcess().isDone()) { //and the process in the CPU is done
-				done.offer(cpu.unload()); //unload from CPU and move to done
-			}else {
-				ready.offer(cpu.unload());//if its not done offer it to the ready again 
-			}
-
-		}else {
-			if(cpu.getProcess().isDone()) { // if not a rr and process is done 
-				done.offer(cpu.unload());//unload from CPU and move to done
-			}
+		if (!cpu.step()) return;//Execute it, unless the pulse went to a context switch
+		metrics.executed(1);
+		slice++;
+
+		Process p = cpu.getProcess();
+		if(p.isDone()) { //the process in the CPU is done
+			retire(cpu.unload()); //unload from CPU and move to done
+		}else if(p.isBlocked()) { //it has to wait for I/O
+			cpu.unload();
+			policy.block(p, slice, pulse);
+			devices.block(p, pulse);
+			if (listener != null) listener.blocked(p, pulse);
+		}else if(policy.preempt(p, slice, pulse)) { //its not done but its time is up
+			cpu.unload();
+			policy.requeue(p, slice, pulse);//offer it to the ready again 
+			if (listener != null) listener.unloaded(p, pulse);
 		}
 	}
+
+	/** Offers every process of the workload that has arrived by now to the
+	 *  policy, then every process whose I/O is over. */
+	private void admit(){
+		while (upcoming != null && upcoming.getArrival() < pulse){
+			policy.offer(upcoming, pulse);
+			upcoming = workload.next();}
+		Process p;
+		while ((p = devices.wake(pulse)) != null)
+			policy.wake(p, pulse);
+	}
+
+	/** Stamps a finished process with the current pulse and moves it to done. */
+	private void retire(Process p){
+		p.complete(pulse);
+		metrics.completed(p.getArrival(), p.getTotal() + p.getIOTotal(), pulse);
+		if (keepDone) done.offer(p);
+		if (listener != null) listener.completed(p, pulse);}
 }
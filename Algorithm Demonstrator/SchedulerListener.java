@@ -0,0 +1,20 @@
+
+/** Observer of the state changes a scheduler makes while it runs.
+ *  Every method does nothing by default, and a scheduler without a
+ *  listener skips the calls entirely, so the simulation core never
+ *  depends on who (if anyone) is watching. Listeners are called on
+ *  whatever thread steps the scheduler. */
+public interface SchedulerListener{
+
+	/** Called after a process is loaded into the CPU. */
+	default void loaded(Process p, int pulse){}
+
+	/** Called after a preempted process is unloaded from the CPU. */
+	default void unloaded(Process p, int pulse){}
+
+	/** Called after a process that finished a CPU burst is unloaded to wait for I/O. */
+	default void blocked(Process p, int pulse){}
+
+	/** Called after a finished process is moved to the done queue. */
+	default void completed(Process p, int pulse){}
+}
@@ -0,0 +1,73 @@
+
+/** Decides which ready process a scheduler runs next and when the
+ *  running process has to give up the CPU. A policy owns the ready
+ *  processes of one scheduler; the scheduler owns the CPU and the
+ *  done queue. Policies may use Process.schedKey and Process.schedSeq
+ *  for their own bookkeeping while they hold a process. */
+public interface SchedulingPolicy{
+
+	/** Adds a process that has just become ready. */
+	void offer(Process p, int pulse);
+
+	/** Adds every process of the queue in order, leaving it empty. */
+	default void offerAll(Process.Queue pq, int pulse){
+		Process p;
+		while ((p = pq.poll()) != null)
+			offer(p, pulse);}
+
+	/** Removes and returns the process to run next, or null if none are ready. */
+	Process poll(int pulse);
+
+	/** Checks if the running process, which has performed slice instructions
+	 *  since it was loaded, should be unloaded at the end of this pulse. */
+	boolean preempt(Process running, int slice, int pulse);
+
+	/** Gets a number of instructions k >= 1 that the running process, slice
+	 *  instructions into its turn at the given pulse, can perform before
+	 *  preempt has to be asked again: preempt would answer false after each of
+	 *  the first k-1, provided no process becomes ready meanwhile. The
+	 *  event-driven simulator uses it to skip pulses. The default of 1 is
+	 *  always correct; Integer.MAX_VALUE means never. */
+	default int runLength(Process running, int slice, int pulse){return 1;}
+
+	/** Gives back a process that was preempted after slice instructions. */
+	void requeue(Process p, int slice, int pulse);
+
+	/** Tells the policy that the running process gave up the CPU after slice
+	 *  instructions to wait for I/O. It comes back through wake. */
+	default void block(Process p, int slice, int pulse){}
+
+	/** Adds a process that is ready again after its I/O; a new process by default. */
+	default void wake(Process p, int pulse){offer(p, pulse);}
+
+	/** Gets the number of ready processes. */
+	int size();
+
+	/** Checks if there are no ready processes. */
+	default boolean isEmpty(){return size() == 0;}
+
+	/** Gets the name shown in reports. */
+	String getName();
+
+	/** Creates a policy from its short name: fifo, rr, sjf, srtf, priority,
+	 *  mlfq, lottery or cfs. A name may end in ":N" to set the policy's main
+	 *  parameter: the quantum of rr and lottery, the top quantum of mlfq,
+	 *  the aging interval of priority or the granularity of cfs. */
+	static SchedulingPolicy forName(String name){
+		int colon = name.indexOf(':');
+		String key = (colon < 0 ? name : name.substring(0, colon)).toLowerCase();
+		boolean given = colon >= 0;
+		int n = given ? Integer.parseInt(name.substring(colon+1)) : 0;
+		switch (key){
+		case "fifo": return new FifoPolicy();
+		case "rr": return given ? new RoundRobinPolicy(n) : new RoundRobinPolicy();
+		case "sjf": return new ShortestJobFirstPolicy();
+		case "srtf": return new ShortestRemainingTimePolicy();
+		case "priority": return given ? new PriorityPolicy(n) : new PriorityPolicy();
+		case "mlfq": return given ? new FeedbackQueuePolicy(3, n, 200) : new FeedbackQueuePolicy();
+		case "lottery": return given ? new LotteryPolicy(n, 0) : new LotteryPolicy();
+		case "cfs": return given ? new FairSharePolicy(n) : new FairSharePolicy();
+		default: throw new IllegalArgumentException("Unknown scheduling policy: "+name);
+		}
+	}
+}
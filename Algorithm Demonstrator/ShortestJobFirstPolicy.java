@@ -0,0 +1,35 @@
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+
+/** Shortest Job First: the ready process with the fewest instructions
+ *  left in its CPU burst runs next, and runs to the end of the burst.
+ *  Ties go to the process that became ready first. Ready processes are
+ *  kept in a binary heap. */
+public class ShortestJobFirstPolicy implements SchedulingPolicy{
+
+	/** Orders by instructions left in the burst, then by arrival. */
+	static final Comparator<Process> SHORTEST = (a, b) -> {
+		int c = Integer.compare(a.getBurstRemaining(), b.getBurstRemaining());
+		return c != 0 ? c : Long.compare(a.schedSeq, b.schedSeq);};
+
+	final PriorityQueue<Process> ready = new PriorityQueue<>(SHORTEST);
+	private long arrivals;
+
+	public void offer(Process p, int pulse){
+		p.schedSeq = arrivals++;
+		ready.offer(p);}
+
+	public Process poll(int pulse){return ready.poll();}
+
+	public boolean preempt(Process running, int slice, int pulse){return false;}
+
+	@Override
+	public int runLength(Process running, int slice, int pulse){return Integer.MAX_VALUE;}
+
+	public void requeue(Process p, int slice, int pulse){offer(p, pulse);}
+
+	public int size(){return ready.size();}
+
+	public String getName(){return "Shortest Job First";}
+}
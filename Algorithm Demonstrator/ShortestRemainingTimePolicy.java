@@ -0,0 +1,22 @@
+
+/** Shortest Remaining Time First: the preemptive form of Shortest Job
+ *  First. The running process is unloaded as soon as a ready process
+ *  has strictly fewer instructions left in its burst. Ready processes never change
+ *  while they wait, so the heap stays valid without re-keying. */
+public class ShortestRemainingTimePolicy extends ShortestJobFirstPolicy{
+
+	@Override
+	public boolean preempt(Process running, int slice, int pulse){
+		Process best = ready.peek();
+		return best != null && best.getBurstRemaining() < running.getBurstRemaining();}
+
+	/** Waiting processes do not change and the running one only gets shorter,
+	 *  so unless the very next instruction is preempted, nothing is. */
+	@Override
+	public int runLength(Process running, int slice, int pulse){
+		Process best = ready.peek();
+		return best != null && best.getBurstRemaining() < running.getBurstRemaining()-1 ? 1 : Integer.MAX_VALUE;}
+
+	@Override
+	public String getName(){return "Shortest Remaining Time";}
+}
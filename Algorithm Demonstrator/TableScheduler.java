@@ -0,0 +1,202 @@
+import java.util.Arrays;
+
+
+/** A Strict FIFO or Round Robin scheduler over a ProcessTable instead of
+ *  linked Process objects: the ready queue is a ring buffer of rows and
+ *  the CPU state is a few ints. It loads, unloads and completes processes
+ *  at exactly the same pulses as a Scheduler with FifoPolicy or
+ *  RoundRobinPolicy and the same switch cost.
+ *
+ *  Processes scheduled as objects (through Machine, a queue or a workload)
+ *  become rows of the table; they are brought up to date whenever they
+ *  leave the CPU and are the only ones the listener and the done queue
+ *  see. Rows added to the table directly are scheduled with schedule(int)
+ *  and never allocate anything per process. A row has no I/O bursts, so
+ *  processes that block on I/O cannot be scheduled here.
+ *
+ *  Usage: java TableScheduler [PROCESSES [QUANTUM]] compares the memory
+ *  and throughput of both representations on the same processes. */
+public class TableScheduler implements Machine{
+
+	private final ProcessTable table;
+	private final ProcessTable.RowQueue ready = new ProcessTable.RowQueue();
+	private final int quantum, switchCost;
+	private final Process.Queue done = new Process.Queue();
+	private Process[] origins = new Process[0];
+	private int pulse, slice, running = -1, previous = -1, stall, remaining;
+	private long switches;
+	private SchedulerListener listener;
+	private final Metrics metrics = new Metrics(1);
+	private final Devices devices = new Devices(); // stays empty
+	private Workload workload;
+	private Process upcoming;
+	private boolean keepDone = true;
+
+	/** Instantiates a Strict FIFO (quantum 0) or Round Robin scheduler over a new table. */
+	public TableScheduler(int quantum){this(new ProcessTable(), quantum, 0);}
+
+	/** Instantiates a Strict FIFO (quantum 0) or Round Robin scheduler over the
+	 *  given table, spending switchCost pulses on every context switch. */
+	public TableScheduler(ProcessTable table, int quantum, int switchCost){
+		if (table == null) throw new NullPointerException("table must not be null");
+		if (quantum < 0) throw new IllegalArgumentException("quantum must not be negative");
+		if (switchCost < 0) throw new IllegalArgumentException("switchCost must not be negative");
+		this.table = table;
+		this.quantum = quantum;
+		this.switchCost = switchCost;}
+
+	/** Gets the table holding the processes. */
+	public ProcessTable getTable(){return table;}
+
+	/** Gets the number of context switches so far. */
+	public long getSwitches(){return switches;}
+
+	/** Schedules a row of the table. */
+	public void schedule(int row){
+		if (table.isDone(row)) throw new IllegalArgumentException("process at row "+row+" is done");
+		ready.offer(row);
+		remaining++;}
+
+	/** Schedules every row of the table, in order. */
+	public void scheduleTable(){
+		for (int row=0; row < table.size(); row++)
+			schedule(row);}
+
+	/** Adds the process to the table and schedules its row. */
+	public void schedule(Process p){
+		if (p.hasIO()) throw new IllegalArgumentException(p.getName()+" has I/O bursts, which a table cannot hold");
+		int row = table.add(p);
+		if (row >= origins.length) origins = Arrays.copyOf(origins, Math.max(16, table.size()*2));
+		origins[row] = p;
+		schedule(row);}
+
+	public void scheduleAll(Process.Queue pq){
+		Process p;
+		while ((p = pq.poll()) != null)
+			schedule(p);}
+
+	public void setWorkload(Workload w){
+		workload = w;
+		upcoming = w == null ? null : w.next();}
+
+	public void setKeepDone(boolean keep){keepDone = keep;}
+
+	public Process.Queue getDoneQueue(){return done;}
+
+	public void setListener(SchedulerListener l){listener = l;}
+
+	public Metrics getMetrics(){return metrics;}
+
+	public Devices getDevices(){return devices;}
+
+	public int getPulse(){return pulse;}
+
+	public boolean isDone(){return remaining == 0 && upcoming == null;}
+
+	/** The process object of a row, or null if it was added as a row. */
+	private Process origin(int row){return row < origins.length ? origins[row] : null;}
+
+	/** Brings the process object of a row, if any, up to date with the table. */
+	private Process sync(int row){
+		Process p = origin(row);
+		if (p != null) p.performInstructions(table.getFinished(row) - p.getFinished());
+		return p;}
+
+	/** Does what Scheduler.step() does, on rows. */
+	public void step(){
+		pulse++;
+		while (upcoming != null && upcoming.getArrival() < pulse){
+			schedule(upcoming);
+			upcoming = workload.next();}
+		metrics.tick(pulse, ready.size());
+
+		if (running < 0){
+			running = ready.poll();
+			if (running < 0) return; //nothing is ready, the cpu idles
+			slice = 0;
+			if (running != previous){
+				switches++;
+				metrics.switched();
+				stall = switchCost;}
+			if (table.getFinished(running) == 0) metrics.started(table.getArrival(running), pulse);
+			Process p = origin(running);
+			if (listener != null && p != null) listener.loaded(p, pulse);}
+		if (stall > 0){ //the pulse goes to a context switch
+			stall--;
+			return;}
+		table.perform(running);
+		metrics.executed(1);
+		slice++;
+
+		int row = running;
+		if (table.isDone(row)){
+			running = -1;
+			previous = row;
+			remaining--;
+			table.complete(row, pulse);
+			metrics.completed(table.getArrival(row), table.getTotal(row), pulse);
+			Process p = sync(row);
+			if (p == null) return;
+			origins[row] = null; // the table keeps the result, the object may go
+			p.complete(pulse);
+			if (keepDone) done.offer(p);
+			if (listener != null) listener.completed(p, pulse);}
+		else if (quantum > 0 && slice >= quantum){
+			running = -1;
+			previous = row;
+			ready.offer(row);
+			Process p = sync(row);
+			if (listener != null && p != null) listener.unloaded(p, pulse);}
+	}
+
+	/** Gets the heap in use after a full collection, in bytes. */
+	private static long usedHeap(){
+		Runtime rt = Runtime.getRuntime();
+		for (int i=0; i < 3; i++) System.gc();
+		return rt.totalMemory() - rt.freeMemory();}
+
+	/** Builds the same processes both ways, then runs them under Scheduler and
+	 *  TableScheduler, printing memory per process and pulses per second. */
+	public static void main(String[] args){
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		int quantum = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int[] sizes = new int[n];
+		java.util.Random random = new java.util.Random(0);
+		for (int i=0; i < n; i++)
+			sizes[i] = 1 + random.nextInt(20);
+		System.out.printf("%d processes, %s%n", n, quantum == 0 ? "Strict FIFO" : "Round Robin (q="+quantum+")");
+
+		for (int round=1; round <= 3; round++){
+			long before = usedHeap();
+			Process.Queue queue = new Process.Queue();
+			for (int i=0; i < n; i++)
+				queue.offer(new Process("p"+i, sizes[i]));
+			long queueBytes = usedHeap() - before;
+			Scheduler s = new Scheduler(quantum == 0 ? new FifoPolicy() : new RoundRobinPolicy(quantum));
+			s.setKeepDone(false);
+			s.scheduleAll(queue);
+			long start = System.nanoTime();
+			while (!s.isDone()) s.step();
+			long queueNanos = System.nanoTime() - start;
+			int queuePulses = s.getPulse();
+			s = null;
+			queue = null;
+
+			before = usedHeap();
+			ProcessTable table = new ProcessTable(n);
+			for (int i=0; i < n; i++)
+				table.add("p"+i, sizes[i]);
+			long tableBytes = usedHeap() - before;
+			TableScheduler t = new TableScheduler(table, quantum, 0);
+			t.scheduleTable();
+			start = System.nanoTime();
+			while (!t.isDone()) t.step();
+			long tableNanos = System.nanoTime() - start;
+			if (t.getPulse() != queuePulses) throw new AssertionError("pulse counts differ: "+queuePulses+" vs "+t.getPulse());
+
+			System.out.printf("round %d: Process.Queue %.1f bytes/process, %.0f pulses/sec; ProcessTable %.1f bytes/process, %.0f pulses/sec%n",
+					round, (double) queueBytes / n, queuePulses / (queueNanos / 1e9),
+					(double) tableBytes / n, t.getPulse() / (tableNanos / 1e9));
+		}
+	}
+}
@@ -0,0 +1,359 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+
+/** A run recorded by a TraceWriter, read back into memory. The records
+ *  become parallel arrays of events, indexed per process as well, so the
+ *  state of every process at any pulse is a binary search away: that lets
+ *  a view scrub backwards and forwards through a run without simulating it
+ *  again. A trace can also be checked against a new simulation of the same
+ *  scenario, or against another trace, to find where two versions of the
+ *  schedulers first decide differently.
+ *
+ *  Usage: java TraceReplay TRACE [-dump] [-at PULSE] [-verify SCENARIOS] [-diff TRACE]
+ *    -dump prints every event.
+ *    -at prints the state of every process after the given pulse.
+ *    -verify simulates the recorded scenario from the scenario file again
+ *       on the recorded machine and reports the first event that differs.
+ *    -diff reports the first event that differs from another trace.
+ *  Exits with 1 if a check finds a difference. */
+public class TraceReplay{
+
+	private final String scenario, policy, balance;
+	private final int cores, switchCost;
+	private boolean complete;
+
+	// Processes, numbered in order of definition
+	private String[] names = new String[16];
+	private int[] totals = new int[16], arrivals = new int[16];
+	private int processes;
+
+	// Events in order; finished is the process's instruction count after the event
+	private byte[] kinds = new byte[64];
+	private int[] pulses = new int[64], ids = new int[64], finished = new int[64];
+	private int events;
+
+	// The events of process i are byProcess[first[i]] to byProcess[first[i+1]-1]
+	private int[] first, byProcess;
+
+	/** Reads a whole trace file. A trace cut off by a crash reads up to its
+	 *  last whole record and is not complete. */
+	public TraceReplay(File f) throws IOException{
+		ByteBuffer in;
+		try (FileChannel c = FileChannel.open(f.toPath())){
+			if (c.size() > Integer.MAX_VALUE) throw new IOException("trace "+f+" is too large");
+			in = c.map(FileChannel.MapMode.READ_ONLY, 0, c.size());}
+		try {
+			if (in.getInt() != TraceWriter.MAGIC) throw new IOException(f+" is not a trace");
+			int version = in.getInt();
+			if (version < 1 || version > TraceWriter.VERSION) throw new IOException("trace "+f+" has an unknown version");
+			scenario = text(in);
+			policy = text(in);
+			cores = varint(in);
+			balance = text(in);
+			switchCost = varint(in);}
+		catch (BufferUnderflowException e){throw new IOException("trace "+f+" ends in its header");}
+		read(in);
+		index();
+	}
+
+	/** Decodes the records into the event arrays. */
+	private void read(ByteBuffer in) throws IOException{
+		int[] current = new int[16]; // instructions finished per process
+		int pulse = 0, id = 0;
+		try {
+			while (true){
+				int mark = in.position();
+				int tag = in.get() & 0xFF, kind = tag & TraceWriter.KIND_MASK;
+				if (tag == TraceWriter.END){
+					complete = true;
+					return;}
+				if (kind == TraceWriter.DEFINE){
+					String name = text(in);
+					int total = varint(in), arrival = varint(in);
+					define(name, total, arrival);
+					if (processes > current.length) current = Arrays.copyOf(current, current.length*2);
+					continue;}
+				if (kind > TraceWriter.BLOCK) throw new IOException("unknown record "+kind+" at byte "+mark);
+				int delta = tag >>> TraceWriter.KIND_BITS;
+				if (delta == TraceWriter.LONG_DELTA) delta += varint(in);
+				int d = varint(in);
+				pulse += delta;
+				id += d >>> 1 ^ -(d & 1);
+				if (id < 0 || id >= processes) throw new IOException("undefined process "+id+" at byte "+mark);
+				if (kind == TraceWriter.UNLOAD || kind == TraceWriter.BLOCK) current[id] += varint(in);
+				else if (kind == TraceWriter.COMPLETE) current[id] = totals[id];
+				add(kind, pulse, id, current[id]);}
+		}
+		catch (BufferUnderflowException e){} // cut off: keep every whole record
+	}
+
+	private void define(String name, int total, int arrival){
+		if (processes == names.length){
+			names = Arrays.copyOf(names, processes*2);
+			totals = Arrays.copyOf(totals, processes*2);
+			arrivals = Arrays.copyOf(arrivals, processes*2);}
+		names[processes] = name;
+		totals[processes] = total;
+		arrivals[processes++] = arrival;}
+
+	private void add(int kind, int pulse, int id, int done){
+		if (events == kinds.length){
+			kinds = Arrays.copyOf(kinds, events*2);
+			pulses = Arrays.copyOf(pulses, events*2);
+			ids = Arrays.copyOf(ids, events*2);
+			finished = Arrays.copyOf(finished, events*2);}
+		kinds[events] = (byte) kind;
+		pulses[events] = pulse;
+		ids[events] = id;
+		finished[events++] = done;}
+
+	/** Groups the events by process, keeping their order. */
+	private void index(){
+		first = new int[processes+1];
+		for (int i=0; i < events; i++)
+			first[ids[i]+1]++;
+		for (int p=0; p < processes; p++)
+			first[p+1] += first[p];
+		byProcess = new int[events];
+		int[] next = Arrays.copyOf(first, processes);
+		for (int i=0; i < events; i++)
+			byProcess[next[ids[i]]++] = i;}
+
+	private static int varint(ByteBuffer in) throws IOException{
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7){
+			byte b = in.get();
+			v |= (b & 0x7F) << shift;
+			if (b >= 0) return v;}
+		throw new IOException("malformed number at byte "+in.position());}
+
+	private static String text(ByteBuffer in) throws IOException{
+		byte[] s = new byte[varint(in)];
+		in.get(s);
+		return new String(s, StandardCharsets.UTF_8);}
+
+	/** Gets the name of the scenario that ran. */
+	public String getScenario(){return scenario;}
+
+	/** Gets the name of the policy that ran, as SchedulingPolicy.forName takes it. */
+	public String getPolicy(){return policy;}
+
+	/** Gets the number of cores, 0 for a single-CPU scheduler. */
+	public int getCores(){return cores;}
+
+	/** Gets the load balancing of a multi-core run, or null. */
+	public MultiCoreScheduler.Balance getBalance(){return balance.isEmpty() ? null : MultiCoreScheduler.Balance.valueOf(balance);}
+
+	/** Gets the pulses spent on every context switch. */
+	public int getSwitchCost(){return switchCost;}
+
+	/** Checks if the trace was closed properly rather than cut off. */
+	public boolean isComplete(){return complete;}
+
+	/** Gets the number of processes defined. */
+	public int getProcesses(){return processes;}
+
+	/** Gets the name of a process. */
+	public String getName(int id){return names[check(id)];}
+
+	/** Gets the total amount of instructions of a process. */
+	public int getTotal(int id){return totals[check(id)];}
+
+	/** Gets the pulse at which a process arrives. */
+	public int getArrival(int id){return arrivals[check(id)];}
+
+	/** Gets the number of events. */
+	public int getEvents(){return events;}
+
+	/** Gets the kind of an event: TraceWriter.LOAD, UNLOAD, BLOCK or COMPLETE. */
+	public int getKind(int event){return kinds[event];}
+
+	/** Gets the pulse of an event. */
+	public int getPulse(int event){return pulses[event];}
+
+	/** Gets the process of an event. */
+	public int getProcess(int event){return ids[event];}
+
+	/** Gets the last pulse anything happened at. */
+	public int getLastPulse(){return events == 0 ? 0 : pulses[events-1];}
+
+	/** Gets the last event of a process at or before pulse, or -1. */
+	private int last(int id, int pulse){
+		int lo = first[check(id)], hi = first[id+1] - 1, found = -1;
+		while (lo <= hi){
+			int mid = (lo + hi) >>> 1;
+			if (pulses[byProcess[mid]] <= pulse){
+				found = mid;
+				lo = mid+1;}
+			else hi = mid-1;}
+		return found;}
+
+	/** Gets the instructions a process had finished after the given pulse.
+	 *  Within a stay on the CPU the context switch comes first and then an
+	 *  instruction every pulse, so progress is exact between events. A process
+	 *  still on the CPU where the trace ends, as in one still being written,
+	 *  is counted on the same way up to the last pulse of the trace. */
+	public int getFinished(int id, int pulse){
+		int k = last(id, pulse);
+		if (k < 0) return 0;
+		int e = byProcess[k];
+		if (kinds[e] != TraceWriter.LOAD) return finished[e];
+		if (k+1 == first[id+1]){
+			int ran = Math.min(pulse, getLastPulse()) - pulses[e] + 1 - (isSwitch(id, k) ? switchCost : 0);
+			return (int) Math.min(totals[id], finished[e] + (long) Math.max(0, ran));}
+		int end = byProcess[k+1];
+		return Math.max(finished[e], finished[end] - (pulses[end] - pulse));}
+
+	/** Checks if the load byProcess[k] of a process cost a context switch:
+	 *  it did unless nothing else was loaded since the process was unloaded,
+	 *  as a CPU takes back the process it just unloaded for free. The trace
+	 *  does not say which core loaded what, so on several cores this is a guess. */
+	private boolean isSwitch(int id, int k){
+		if (k == first[id]) return true;
+		for (int i=byProcess[k]-1; i > byProcess[k-1]; i--)
+			if (kinds[i] == TraceWriter.LOAD) return true;
+		return false;}
+
+	/** Checks if a process was on a CPU after the given pulse. */
+	public boolean isRunning(int id, int pulse){
+		int k = last(id, pulse);
+		return k >= 0 && kinds[byProcess[k]] == TraceWriter.LOAD;}
+
+	/** Gets the pulse at which a process finished, or -1 if it has not by the end of the trace. */
+	public int getCompletionPulse(int id){
+		int k = first[check(id)+1] - 1;
+		return k >= first[id] && kinds[byProcess[k]] == TraceWriter.COMPLETE ? pulses[byProcess[k]] : -1;}
+
+	private int check(int id){
+		if (id < 0 || id >= processes) throw new IndexOutOfBoundsException("no process "+id);
+		return id;}
+
+	/** Names an event kind. */
+	private static String what(int kind){
+		switch (kind){
+			case TraceWriter.LOAD: return "load";
+			case TraceWriter.UNLOAD: return "unload";
+			case TraceWriter.BLOCK: return "block";
+			default: return "completion";}
+	}
+
+	/** Describes an event. */
+	public String describe(int event){
+		int id = ids[event];
+		return "pulse "+pulses[event]+": "+what(kinds[event])+" of "+names[id].trim()+" ("+finished[event]+"/"+totals[id]+")";}
+
+	/** Steps the machine to the end, comparing every load, unload, block and completion
+	 *  with the trace. The machine must hold the recorded scenario and not have
+	 *  run yet; its listener is replaced. Returns null if the run matches the
+	 *  trace, or a description of the first difference. */
+	public String verify(Machine m){
+		Checker c = new Checker();
+		m.setListener(c);
+		while (c.mismatch == null && !m.isDone())
+			m.step();
+		m.setListener(null);
+		if (c.mismatch != null) return c.mismatch;
+		if (c.next < events) return "expected "+describe(c.next)+", the run ended at pulse "+m.getPulse();
+		return null;
+	}
+
+	/** Compares the events of a simulation with the trace, one by one. */
+	private class Checker implements SchedulerListener{
+		private final Map<Process, Integer> seen = new IdentityHashMap<>();
+		private final Process[] bound = new Process[processes];
+		private int next;
+		private String mismatch;
+
+		private void check(int kind, Process p, int pulse){
+			if (mismatch != null) return;
+			String got = what(kind)+" of "+p.getName().trim()+" ("+p.getFinished()+"/"+p.getTotal()+") at pulse "+pulse;
+			if (next == events){
+				mismatch = "the trace ended, got "+got;
+				return;}
+			int e = next++, id = ids[e];
+			Integer known = seen.get(p);
+			boolean same = known == null ? bound[id] == null && names[id].equals(p.getName()) && totals[id] == p.getTotal()
+					&& arrivals[id] == p.getArrival() : known == id;
+			if (!same || kinds[e] != kind || pulses[e] != pulse || finished[e] != p.getFinished()){
+				mismatch = "expected "+describe(e)+", got "+got;
+				return;}
+			if (known == null){
+				seen.put(p, id);
+				bound[id] = p;}
+		}
+
+		public void loaded(Process p, int pulse){check(TraceWriter.LOAD, p, pulse);}
+
+		public void unloaded(Process p, int pulse){check(TraceWriter.UNLOAD, p, pulse);}
+
+		public void blocked(Process p, int pulse){check(TraceWriter.BLOCK, p, pulse);}
+
+		public void completed(Process p, int pulse){check(TraceWriter.COMPLETE, p, pulse);}
+	}
+
+	/** Compares two traces event by event. Returns null if they record the
+	 *  same decisions, or a description of the first difference. */
+	public static String diff(TraceReplay a, TraceReplay b){
+		int n = Math.min(a.events, b.events);
+		for (int i=0; i < n; i++){
+			int p = a.ids[i], q = b.ids[i];
+			if (a.kinds[i] != b.kinds[i] || a.pulses[i] != b.pulses[i] || a.finished[i] != b.finished[i]
+					|| !a.names[p].equals(b.names[q]) || a.totals[p] != b.totals[q] || a.arrivals[p] != b.arrivals[q])
+				return "event "+i+": "+a.describe(i)+" against "+b.describe(i);}
+		if (a.events != b.events){
+			TraceReplay longer = a.events > b.events ? a : b;
+			return "event "+n+": one trace ends, the other has "+longer.describe(n);}
+		return null;
+	}
+
+	/** Prints what a trace holds and runs the checks the command line asks for. */
+	public static void main(String[] args) throws IOException{
+		if (args.length == 0){
+			System.err.println("usage: java TraceReplay TRACE [-dump] [-at PULSE] [-verify SCENARIOS] [-diff TRACE]");
+			System.exit(2);}
+		TraceReplay t = new TraceReplay(new File(args[0]));
+		PrintStream out = System.out;
+		out.printf("%s [%s] on %s, switch cost %d: %d processes, %d events up to pulse %d%s%n",
+				t.scenario, t.policy, t.cores == 0 ? "one CPU" : t.cores+" cores ("+t.balance.toLowerCase()+")", t.switchCost,
+				t.processes, t.events, t.getLastPulse(), t.complete ? "" : " (cut off)");
+		boolean differs = false;
+		for (int i=1; i < args.length; i++){
+			if (args[i].equals("-dump"))
+				for (int e=0; e < t.events; e++)
+					out.println(t.describe(e));
+			else if (args[i].equals("-at") && i+1 < args.length){
+				int pulse = Integer.parseInt(args[++i]);
+				for (int id=0; id < t.processes; id++)
+					out.printf("%s %d/%d%s%n", t.names[id].trim(), t.getFinished(id, pulse), t.totals[id],
+							t.getCompletionPulse(id) >= 0 && t.getCompletionPulse(id) <= pulse ? " done"
+							: t.isRunning(id, pulse) ? " running" : "");}
+			else if (args[i].equals("-verify") && i+1 < args.length){
+				Map<String, Process.Queue> scenarios;
+				try {scenarios = ScenarioReader.read(new File(args[++i]));}
+				catch (ParseException e){throw new IOException("Malformed scenario file, "+e.getMessage(), e);}
+				Process.Queue processes = scenarios.get(t.scenario);
+				if (processes == null) throw new IOException("no scenario \""+t.scenario+"\" in "+args[i]);
+				Machine m = BatchRunner.machine(t.policy, t.cores, t.getBalance(), false, false, t.switchCost);
+				BatchRunner.load(m, processes);
+				String mismatch = t.verify(m);
+				out.println(mismatch == null ? "verified: the simulation matches the trace" : "differs: "+mismatch);
+				differs |= mismatch != null;}
+			else if (args[i].equals("-diff") && i+1 < args.length){
+				String difference = diff(t, new TraceReplay(new File(args[++i])));
+				out.println(difference == null ? "same: both traces record the same decisions" : "differs at "+difference);
+				differs |= difference != null;}
+			else throw new IllegalArgumentException("unknown option "+args[i]);
+		}
+		if (differs) System.exit(1);
+	}
+}
@@ -0,0 +1,167 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+
+/** A listener that records every load, unload, block and completion of a run as a
+ *  compact binary log, so the run can be replayed, checked against a new
+ *  simulation or compared with another version (see TraceReplay).
+ *
+ *  The log starts with a header naming the scenario and the machine it ran
+ *  on. Then every record is a tag byte holding its kind in the low 3 bits
+ *  and the pulses since the previous record in the high 5 (31 meaning a
+ *  varint follows), then the process as a zigzag varint difference from the
+ *  previous record's process. Processes are numbered in the order they are
+ *  first seen, and a definition record (name, instructions, arrival) comes
+ *  before the first record of each. An unload also holds the instructions
+ *  performed since the load, and so does a block (an unload to wait for
+ *  I/O); everything else about progress follows from the pulses, so most
+ *  records take two bytes. An end tag closes the log.
+ *
+ *  Records go through a direct buffer that is written to the channel
+ *  whenever it fills, on flush() and on close(). Memory stays bounded by
+ *  the processes that have not completed yet. */
+public class TraceWriter implements SchedulerListener, AutoCloseable{
+
+	static final int MAGIC = 0x54524345; // "TRCE"
+	static final int VERSION = 2; // 2 added BLOCK
+	static final int END = 0, LOAD = 1, UNLOAD = 2, COMPLETE = 3, DEFINE = 4, BLOCK = 5;
+	static final int KIND_BITS = 3, KIND_MASK = (1 << KIND_BITS) - 1, LONG_DELTA = 0xFF >>> KIND_BITS;
+	private static final int BUFFER = 1 << 16;
+
+	private final WritableByteChannel out;
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER);
+	private final Map<Process, int[]> live = new IdentityHashMap<>(); // id and finished at load
+	private int ids, lastId, lastPulse;
+	private long records;
+
+	/** Starts a log on the channel for a run of the scenario on a machine with
+	 *  the given policy, cores (0 for a single-CPU scheduler), balance and
+	 *  switch cost; these are what TraceReplay needs to simulate it again. */
+	public TraceWriter(WritableByteChannel out, String scenario, String policy, int cores,
+			MultiCoreScheduler.Balance balance, int switchCost) throws IOException{
+		if (out == null) throw new NullPointerException("channel must not be null");
+		this.out = out;
+		buf.putInt(MAGIC).putInt(VERSION);
+		text(scenario == null ? "" : scenario);
+		text(policy);
+		varint(cores);
+		text(balance == null ? "" : balance.name());
+		varint(switchCost);}
+
+	/** Starts a log in a new file, replacing any file of that name. */
+	public static TraceWriter create(File f, String scenario, String policy, int cores,
+			MultiCoreScheduler.Balance balance, int switchCost) throws IOException{
+		FileChannel c = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {return new TraceWriter(c, scenario, policy, cores, balance, switchCost);}
+		catch (IOException e){
+			c.close();
+			throw e;}
+	}
+
+	/** Gets the number of load, unload, block and completion records written. */
+	public long getRecords(){return records;}
+
+	/** Gets the number of a process in the log, defining it if it is new.
+	 *  Defining the processes of a run up front numbers them in that order. */
+	public int define(Process p){
+		int[] state = live.get(p);
+		if (state != null) return state[0];
+		state = new int[] {ids++, p.getFinished()};
+		live.put(p, state);
+		byte[] name = p.getName().getBytes(StandardCharsets.UTF_8);
+		room(name.length + 20);
+		buf.put((byte) DEFINE);
+		text(name);
+		varint(p.getTotal());
+		varint(p.getArrival());
+		return state[0];
+	}
+
+	@Override
+	public void loaded(Process p, int pulse){
+		int id = define(p);
+		live.get(p)[1] = p.getFinished();
+		record(LOAD, id, pulse);}
+
+	@Override
+	public void unloaded(Process p, int pulse){unload(UNLOAD, p, pulse);}
+
+	@Override
+	public void blocked(Process p, int pulse){unload(BLOCK, p, pulse);}
+
+	/** Writes an unload or block record with the instructions performed since the load. */
+	private void unload(int kind, Process p, int pulse){
+		int[] state = live.get(p);
+		if (state == null) throw new IllegalStateException(p.getName()+" was unloaded without being loaded");
+		record(kind, state[0], pulse);
+		varint(p.getFinished() - state[1]);}
+
+	@Override
+	public void completed(Process p, int pulse){
+		int[] state = live.remove(p);
+		if (state == null) throw new IllegalStateException(p.getName()+" completed without being loaded");
+		record(COMPLETE, state[0], pulse);}
+
+	/** Writes the tag, pulse and process of a record. */
+	private void record(int kind, int id, int pulse){
+		int delta = pulse - lastPulse;
+		if (delta < 0) throw new IllegalStateException("pulse "+pulse+" comes after pulse "+lastPulse);
+		room(20);
+		if (delta < LONG_DELTA) buf.put((byte) (delta << KIND_BITS | kind));
+		else {
+			buf.put((byte) (LONG_DELTA << KIND_BITS | kind));
+			varint(delta - LONG_DELTA);}
+		int d = id - lastId;
+		varint(d << 1 ^ d >> 31);
+		lastPulse = pulse;
+		lastId = id;
+		records++;
+	}
+
+	/** Makes room for the next n bytes, writing out the buffer if needed. */
+	private void room(int n){
+		if (buf.remaining() >= n) return;
+		try {drain();}
+		catch (IOException e){throw new UncheckedIOException(e);}
+		if (n > buf.capacity()) throw new IllegalArgumentException("record of "+n+" bytes is too long");}
+
+	private void drain() throws IOException{
+		buf.flip();
+		while (buf.hasRemaining())
+			out.write(buf);
+		buf.clear();}
+
+	private void varint(int v){
+		while ((v & ~0x7F) != 0){
+			buf.put((byte) (v | 0x80));
+			v >>>= 7;}
+		buf.put((byte) v);}
+
+	private void text(String s){text(s.getBytes(StandardCharsets.UTF_8));}
+
+	private void text(byte[] s){
+		room(s.length + 5);
+		varint(s.length);
+		buf.put(s);}
+
+	/** Writes every buffered record to the channel. */
+	public void flush() throws IOException{drain();}
+
+	/** Writes the end tag and the buffered records, then closes the channel. */
+	public void close() throws IOException{
+		try {
+			room(1);
+			buf.put((byte) END);
+			drain();}
+		finally {out.close();}
+	}
+}
@@ -0,0 +1,37 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/** A stream of processes that arrive over time. Machines pull from it
+ *  lazily, one process ahead of the pulse they are at, so a workload can
+ *  describe far more processes than would fit in memory at once. */
+public interface Workload{
+
+	/** Returns the next process, or null when there are no more. Arrival
+	 *  pulses never decrease from one process to the next. */
+	Process next();
+
+	/** Checks if any process in the queue arrives after pulse 0. */
+	static boolean arrivesLater(Process.Queue pq){
+		for (Process p: pq)
+			if (p.getArrival() > 0) return true;
+		return false;
+	}
+
+	/** Drains the queue into a workload ordered by arrival; processes
+	 *  arriving on the same pulse keep their order in the queue. */
+	static Workload of(Process.Queue pq){
+		Process[] processes = new Process[pq.size()];
+		for (int i=0; i < processes.length; i++)
+			processes[i] = pq.poll();
+		Arrays.sort(processes, Comparator.comparingInt(Process::getArrival));
+		return new Workload(){
+			private int next;
+			public Process next(){
+				if (next == processes.length) return null;
+				Process p = processes[next];
+				processes[next++] = null; // let finished processes be collected
+				return p;}
+		};
+	}
+}
@@ -0,0 +1,164 @@
+import java.util.Arrays;
+
+/**
+ * An index of triangles by the scan line each one reaches first, kept up
+ * to date as triangles are added, so painting never sorts them.
+ * Triangles are numbered in the order they were added, and every list
+ * here is in that order, since a new triangle always goes at the end.
+ *
+ * Row r lists the triangles whose first scan line is r. At the top of
+ * every strip of STRIP_ROWS rows there is also a list of the triangles
+ * that started above the strip and still reach its first row, so painting
+ * can start at any row by looking at one such list and less than a strip
+ * of rows, instead of at every triangle above it.
+ */
+public class EdgeTable {
+	/**
+	 * The rows that are indexed: a frame can be at most this tall.
+	 */
+	public static final int MAX_ROWS = 1 << 16;
+	public static final int STRIP_ROWS = 32;
+
+	private Triangle[] triangles = new Triangle[16];
+	private int size;
+
+	// starting[r] holds the numbers of the triangles whose first row is r,
+	// in its first startingSize[r] entries; crossing[s] the same for
+	// the triangles reaching row s*STRIP_ROWS from above it.
+	private int[][] starting = new int[0][];
+	private int[] startingSize = new int[0];
+	private int[][] crossing = new int[0][];
+	private int[] crossingSize = new int[0];
+
+	/**
+	 * Add a triangle at the end of the table.
+	 * This takes time in the number of strips the triangle covers.
+	 */
+	public void add(Triangle t) {
+		if (size == triangles.length) triangles = Arrays.copyOf(triangles, size * 2);
+		int i = size;
+		triangles[size++] = t;
+		int first = firstRow(t);
+		if (first < 0) return;
+		int last = lastRow(t);
+		grow(last + 1);
+		starting[first] = append(starting[first], startingSize[first]++, i);
+		for (int s = first / STRIP_ROWS + 1; s * STRIP_ROWS <= last; ++s) {
+			crossing[s] = append(crossing[s], crossingSize[s]++, i);
+		}
+	}
+
+	/**
+	 * Remove a triangle from the table. Its number isn't used again.
+	 * This takes time in the number of triangles, to find it, and in
+	 * the number on its first row and the strips it covers.
+	 * @return false if the triangle is not in the table
+	 */
+	public boolean remove(Triangle t) {
+		int i = size - 1;
+		while (i >= 0 && triangles[i] != t) --i;
+		if (i < 0) return false;
+		triangles[i] = null;
+		int first = firstRow(t);
+		if (first < 0) return true;
+		int last = lastRow(t);
+		startingSize[first] = delete(starting[first], startingSize[first], i);
+		for (int s = first / STRIP_ROWS + 1; s * STRIP_ROWS <= last; ++s) {
+			crossingSize[s] = delete(crossing[s], crossingSize[s], i);
+		}
+		return true;
+	}
+
+	/**
+	 * Return the first row whose scan line crosses the triangle, or -1 if
+	 * there is none: triangles that are above row 0, below the last row,
+	 * or between two rows aren't indexed.
+	 */
+	private static int firstRow(Triangle t) {
+		double minY = t.getMinY(), maxY = t.getMaxY();
+		if (!(maxY >= 0 && minY < MAX_ROWS)) return -1;
+		int first = (int)Math.max(0, Math.ceil(minY));
+		return first <= lastRow(t) ? first : -1;
+	}
+
+	/**
+	 * Return the last row whose scan line may cross the triangle.
+	 */
+	private static int lastRow(Triangle t) {
+		return (int)Math.min(MAX_ROWS - 1, Math.floor(t.getMaxY()));
+	}
+
+	private void grow(int rows) {
+		if (rows <= starting.length) return;
+		int n = Math.max(rows, Math.min(MAX_ROWS, starting.length * 2));
+		starting = Arrays.copyOf(starting, n);
+		startingSize = Arrays.copyOf(startingSize, n);
+		int strips = (n + STRIP_ROWS - 1) / STRIP_ROWS;
+		crossing = Arrays.copyOf(crossing, strips);
+		crossingSize = Arrays.copyOf(crossingSize, strips);
+	}
+
+	private static int[] append(int[] list, int n, int i) {
+		if (list == null) list = new int[4];
+		else if (n == list.length) list = Arrays.copyOf(list, n * 2);
+		list[n] = i;
+		return list;
+	}
+
+	/**
+	 * Delete i from the first n of a list, which is in order,
+	 * keeping the rest in order. Return how many are left.
+	 */
+	private static int delete(int[] list, int n, int i) {
+		int at = Arrays.binarySearch(list, 0, n, i);
+		if (at < 0) return n;
+		System.arraycopy(list, at + 1, list, at, n - at - 1);
+		return n - 1;
+	}
+
+	/**
+	 * Return the number of triangles added, counting removed ones.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the triangles by number. The array is shared,
+	 * and may be longer than size(); it is replaced as triangles are added.
+	 * Removed triangles are null.
+	 */
+	public Triangle[] getTriangles() {
+		return triangles;
+	}
+
+	/**
+	 * Return the numbers of the triangles whose first scan line is the given row,
+	 * in the first getStartingSize(row) entries.
+	 */
+	public int[] getStarting(int row) {
+		return row < starting.length ? starting[row] : null;
+	}
+
+	/**
+	 * Return how many triangles have the given row as their first scan line.
+	 */
+	public int getStartingSize(int row) {
+		return row < startingSize.length ? startingSize[row] : 0;
+	}
+
+	/**
+	 * Return the numbers of the triangles that start above the given strip
+	 * and reach its first row, in the first getCrossingSize(strip) entries.
+	 */
+	public int[] getCrossing(int strip) {
+		return strip < crossing.length ? crossing[strip] : null;
+	}
+
+	/**
+	 * Return how many triangles start above the given strip and reach its first row.
+	 */
+	public int getCrossingSize(int strip) {
+		return strip < crossingSize.length ? crossingSize[strip] : 0;
+	}
+}
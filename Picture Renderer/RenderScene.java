@@ -0,0 +1,211 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Render scenes without a display, into PNG or binary PPM images of any size.
+ * Several scenes, or a directory of them, are rendered in parallel, and the
+ * time each takes is printed as it is done.
+ *
+ * Usage: java RenderScene [-size WIDTHxHEIGHT] [-format png|ppm] [-o OUTPUT] SCENE...
+ *   SCENE is a text or binary scene file (see SceneFile), or a directory,
+ *     whose scenes are rendered: files named .txt or .tris, and binary
+ *     scenes by any name. Images this run writes are never taken for scenes.
+ *   -size is that of the images, 300x200 by default, as ShowScene draws.
+ *   -format is png by default, or that of OUTPUT's extension.
+ *   -o is the image file for a single scene, or else the directory the
+ *     images go in; by default each image goes next to its scene.
+ *   Images are named after their scene, with the extension of the format.
+ *   Nothing is rendered if two scenes would be rendered to the same image,
+ *   as a.txt and a.tris would.
+ */
+public class RenderScene {
+	private static final String USAGE = "usage: java RenderScene [-size WIDTHxHEIGHT] [-format png|ppm] [-o OUTPUT] SCENE...";
+
+	/**
+	 * Write an image as a binary PPM (P6) file.
+	 */
+	public static void writePPM(BufferedImage image, File file) throws IOException {
+		int width = image.getWidth(), height = image.getHeight();
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			out.write(("P6\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII));
+			int[] rgb = new int[width];
+			byte[] row = new byte[width * 3];
+			for (int y=0; y < height; ++y) {
+				image.getRGB(0, y, width, 1, rgb, 0, width);
+				for (int x=0; x < width; ++x) {
+					row[3*x] = (byte)(rgb[x] >> 16);
+					row[3*x+1] = (byte)(rgb[x] >> 8);
+					row[3*x+2] = (byte)rgb[x];
+				}
+				out.write(row);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Write an image in the given format, "png" or "ppm".
+	 */
+	public static void write(BufferedImage image, String format, File file) throws IOException {
+		if (format.equals("ppm")) writePPM(image, file);
+		else if (!ImageIO.write(image, format, file)) throw new IOException("no writer for " + format);
+	}
+
+	/**
+	 * Return the name of a file without its extension.
+	 */
+	private static String baseName(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	/**
+	 * Return whether a file found in a directory is a scene: one named
+	 * .txt or .tris, or a binary scene by any name.
+	 */
+	private static boolean isScene(File file) {
+		String name = file.getName().toLowerCase(Locale.ROOT);
+		if (name.endsWith(".txt") || name.endsWith(".tris")) return true;
+		try {
+			return SceneFile.isBinary(file);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Return the absolute path of a file without any "." or "..",
+	 * so that two names of the same file compare equal.
+	 */
+	private static File path(File file) {
+		return file.toPath().toAbsolutePath().normalize().toFile();
+	}
+
+	/**
+	 * Render a scene file into an image file and print how long that took.
+	 * @return whether it worked: any error is printed instead of thrown,
+	 * so the other scenes still get rendered.
+	 */
+	private static boolean render(File scene, File image, String format, int width, int height) {
+		try {
+			long start = System.nanoTime();
+			Scene s = SceneFile.load(scene);
+			long read = System.nanoTime();
+			BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			s.paint(frame);
+			long painted = System.nanoTime();
+			write(frame, format, image);
+			long written = System.nanoTime();
+			System.out.println(String.format(Locale.ROOT, "%s -> %s: read %.1f ms, render %.1f ms, write %.1f ms",
+					scene, image, (read - start) / 1e6, (painted - read) / 1e6, (written - painted) / 1e6));
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.err.println(scene + ": " + e);
+			return false;
+		}
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		int width = ShowScene.WIDTH, height = ShowScene.HEIGHT;
+		String format = null, output = null;
+		List<File> scenes = new ArrayList<File>();
+		boolean listed = false; // whether any scenes came from a directory
+		Set<File> found = new HashSet<File>(); // the scenes that did
+		for (int i=0; i < args.length; ++i) {
+			if (args[i].equals("-size") && i+1 < args.length) {
+				String[] wh = args[++i].split("x");
+				if (wh.length != 2) throw new IllegalArgumentException("size must be WIDTHxHEIGHT, not " + args[i]);
+				width = Integer.parseInt(wh[0]);
+				height = Integer.parseInt(wh[1]);
+			} else if (args[i].equals("-format") && i+1 < args.length) format = args[++i].toLowerCase(Locale.ROOT);
+			else if (args[i].equals("-o") && i+1 < args.length) output = args[++i];
+			else if (args[i].startsWith("-")) throw new IllegalArgumentException(USAGE);
+			else {
+				File f = new File(args[i]);
+				if (f.isDirectory()) {
+					listed = true;
+					File[] files = f.listFiles();
+					if (files == null) throw new IllegalArgumentException("cannot list " + f);
+					Arrays.sort(files);
+					for (File g : files) {
+						if (g.isFile() && isScene(g)) {
+							scenes.add(g);
+							found.add(g);
+						}
+					}
+				} else scenes.add(f);
+			}
+		}
+		if (scenes.isEmpty()) throw new IllegalArgumentException(USAGE);
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("size must be positive, not " + width + "x" + height);
+		// -o names the image itself only for a single scene named on the command line.
+		boolean single = scenes.size() == 1 && !listed && output != null && !new File(output).isDirectory();
+		if (format == null) {
+			format = "png";
+			if (single && output.toLowerCase(Locale.ROOT).endsWith(".ppm")) format = "ppm";
+		}
+		if (!format.equals("png") && !format.equals("ppm")) throw new IllegalArgumentException("format must be png or ppm, not " + format);
+		File dir = null;
+		if (output != null && !single) {
+			dir = new File(output);
+			if (!dir.isDirectory() && !dir.mkdirs()) throw new IllegalArgumentException("cannot make directory " + dir);
+		}
+
+		List<File> images = new ArrayList<File>();
+		for (File scene : scenes) {
+			if (single) images.add(new File(output));
+			else images.add(new File(dir != null ? dir : scene.getAbsoluteFile().getParentFile(), baseName(scene) + "." + format));
+		}
+		// A scene from a directory that is also an image of this run, left
+		// there by an earlier one, is skipped; one named outright is an error.
+		Set<File> written = new HashSet<File>();
+		for (File image : images) written.add(path(image));
+		for (int i=scenes.size() - 1; i >= 0; --i) {
+			File scene = scenes.get(i);
+			if (!written.contains(path(scene))) continue;
+			if (!found.contains(scene)) throw new IllegalArgumentException(scene + " would be overwritten by an image");
+			scenes.remove(i);
+			images.remove(i);
+		}
+		if (scenes.isEmpty()) throw new IllegalArgumentException("no scenes to render");
+		Map<File, File> sceneOf = new HashMap<File, File>();
+		for (int i=0; i < images.size(); ++i) {
+			File other = sceneOf.put(path(images.get(i)), scenes.get(i));
+			if (other != null) {
+				throw new IllegalArgumentException(other + " and " + scenes.get(i) + " would both be rendered to " + images.get(i));
+			}
+		}
+		final String f = format;
+		final int w = width, h = height;
+		AtomicInteger failed = new AtomicInteger();
+		long start = System.nanoTime();
+		// the scenes are rendered in parallel, and so are the bands of each.
+		IntStream.range(0, images.size()).parallel().forEach(i -> {
+			if (!render(scenes.get(i), images.get(i), f, w, h)) failed.incrementAndGet();
+		});
+		System.out.println(String.format(Locale.ROOT, "%d scenes in %.1f ms, %d failed",
+				scenes.size(), (System.nanoTime() - start) / 1e6, failed.get()));
+		if (failed.get() > 0) System.exit(1);
+	}
+}
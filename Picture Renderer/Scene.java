@@ -1,7 +1,12 @@
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 import javax.swing.JPanel;
 
@@ -9,152 +14,370 @@ public class Scene {
 	private static Triangle.Key minY = new Triangle.Key() {
 		public double apply(Triangle t) {
 			return t.getMinY();
-		}		
-	};
-
-	private static Triangle.Key minX = new Triangle.Key() {
-		public double apply(Triangle t) {
-			return t.getMinX();
 		}
 	};
 
-	private static class ZKey implements Triangle.Key {
-		private double scanX;
-		public double apply(Triangle t) {
-			return t.getZ(scanX);
-		}
-		public void setScanX(double x) {
-			scanX = x;
-		}
-	}
-
-	private ZKey keyZ = new ZKey();
-
 	private Triangle.Group all = new Triangle.Group(minY);
 
+	// The triangles by the scan line they start on, kept as they are added.
+	private final EdgeTable table = new EdgeTable();
+
+	/**
+	 * Add a triangle to the scene. The part of the frame it may change
+	 * is painted again on the next paint(Graphics, Dimension).
+	 */
 	public void add(Triangle t) {
 		all.add(t);
+		table.add(t);
+		damage(t);
+	}
+
+	/**
+	 * Remove a triangle from the scene. The part of the frame it may have changed
+	 * is painted again on the next paint(Graphics, Dimension).
+	 * @throws IllegalArgumentException if the triangle is not in the scene
+	 */
+	public void remove(Triangle t) {
+		if (!table.remove(t)) throw new IllegalArgumentException("triangle is not in the scene");
+		all.remove(t);
+		damage(t);
 	}
 
 	public static final Color BACKGROUND = Color.BLACK; // new Color(128,128,128);
+	private static final int BACKGROUND_RGB = BACKGROUND.getRGB();
+
+	/**
+	 * The frame is split into horizontal bands, painted in parallel.
+	 * There are a few bands per thread, so a thread that finishes a
+	 * simple band early takes another, but no band is thinner than
+	 * MIN_BAND_ROWS, since every band starts by finding its triangles.
+	 */
+	private static final int BANDS_PER_THREAD = 4;
+	private static final int MIN_BAND_ROWS = 8;
+	private Band[] bands = new Band[0];
+
+	// The off-screen frame the panel renders into, kept while its size stays the same.
+	// The pixels dirtyFrom[y] <= x < dirtyTo[y] of each row y of it are out of date,
+	// if "dirty" is set.
+	private BufferedImage frame;
+	private int[] dirtyFrom, dirtyTo;
+	private boolean dirty;
 
+	/**
+	 * Draw the scene, rendered into an off-screen frame of the given size,
+	 * with a single call. The frame is kept, and only rendered again where
+	 * triangles were added or removed since, or all over if its size changed.
+	 */
 	public void paint(Graphics g, Dimension d) {
-		all.sort(); // Sort by minimum y:
-		//Sort "all" the triangles (by minimum y)
+		if (d.width <= 0 || d.height <= 0) return;
+		if (frame == null || frame.getWidth() != d.width || frame.getHeight() != d.height) {
+			frame = new BufferedImage(d.width, d.height, BufferedImage.TYPE_INT_RGB);
+			dirtyFrom = new int[d.height];
+			dirtyTo = new int[d.height];
+			clean();
+			paint(frame);
+		} else if (dirty) {
+			paint(pixels(frame), d.width, d.height, dirtyFrom, dirtyTo);
+			clean();
+		}
+		g.drawImage(frame, 0, 0, null);
+	}
 
-		// We create a bunch of temporary groups.
-		// Each triangle will be in only one at a time
-		Triangle.Group input = all;
-		all = new Triangle.Group(minY);
-		Triangle.Group line = new Triangle.Group(minX);
-		Triangle.Group waiting = new Triangle.Group(minX);
-		Triangle.Group current = new Triangle.Group(keyZ);
-
-		// input: the triangles waiting to be added as the scan line reaches them.
-		// line: the triangles in the scan line that are handled already
-		// waiting: the triangles in the scan line whose minX hasn't been reached yet
-		// current: the triangles in the scan line which may be visible.
-		//     The first of the current group is the one currently visible.
-		//     The others are behind it.
-		// The "waiting" and "current" groups are only used while
-		// drawing pixels on the scan line.
-		// When we're all done with a triangle, it's put back in the "all" group.
-
-		// start the scan:
-		for (int y=0; y < d.height; ++y) {
-			// add any new polygons to "line" from "input" which the scan line has reached
-			// Use getMinY to see if the triangle starts at this y or before.
-			// Since the triangles in "input" are sorted by y,
-			// then as soon as the first triangle hasn't been reached, we can stop looking.
-			// TODO:
-			// DONE! for you
-			while (!input.isEmpty() && input.getFirst().getMinY() <= y) {
-				line.add(input.removeFirst());
-			}
+	private void clean() {
+		Arrays.fill(dirtyFrom, Integer.MAX_VALUE);
+		Arrays.fill(dirtyTo, 0);
+		dirty = false;
+	}
 
-			// consume "line" (remove all its triangles) and for each triangle
-			// if it still intersects the scan line (use Triangle.setScan)
-			// add it to waiting, or to "all" (if not).
-			// ("all" is used for triangles we aren't interested in any more).
-			// TODO
-			while (!line.isEmpty()) {
-				if(line.getFirst().setScan(y) == true) {
-					waiting.add(line.removeFirst());
-				}else {
-					all.add(line.removeFirst());
-				}
+	/**
+	 * Mark the pixels of the frame a triangle may change as out of date:
+	 * the rows whose scan line crosses it, from the smallest x of its points
+	 * to the end of the row. The background before a triangle is filled up
+	 * to and including the first pixel of the next one, so a triangle moves
+	 * where the fills after it stop, and can change pixels well past itself.
+	 */
+	private void damage(Triangle t) {
+		if (frame == null) return;
+		int first = (int)Math.max(0, Math.ceil(t.getMinY()));
+		int last = (int)Math.min(frame.getHeight() - 1, Math.floor(t.getMaxY()));
+		double minX = t.getPoint(0).x;
+		for (int i=1; i < 3; ++i) {
+			minX = Math.min(minX, t.getPoint(i).x);
+		}
+		int from = (int)Math.max(0, Math.floor(minX));
+		int to = frame.getWidth();
+		if (from >= to) return;
+		for (int y=first; y <= last; ++y) {
+			if (from < dirtyFrom[y]) dirtyFrom[y] = from;
+			if (to > dirtyTo[y]) dirtyTo[y] = to;
+			dirty = true;
+		}
+	}
 
-			}
-			// Sort the waiting triangles
+	/**
+	 * Render the scene into the whole image, which must be of
+	 * type TYPE_INT_RGB or TYPE_INT_ARGB.
+	 */
+	public void paint(BufferedImage image) {
+		paint(pixels(image), image.getWidth(), image.getHeight());
+	}
 
-			waiting.sort();
+	private static int[] pixels(BufferedImage image) {
+		if (!(image.getRaster().getDataBuffer() instanceof DataBufferInt) || image.getRaster().getNumDataElements() != 1) {
+			throw new IllegalArgumentException("image must store one int per pixel");
+		}
+		return ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+	}
 
-			for (int x=0; x < d.width; ++x) { // x is modified in the loop
-				// Remove any "waiting" triangles (from the front of the list) whose
-				// start (minX) is at or before pixel x and add them to "current."
-				// As before, as soon as we find one that isn't ready, we can stop.
-				// TODO
-				while (!waiting.isEmpty() && waiting.getFirst().getMinX() <= x) {
-					current.add(waiting.removeFirst());
+	/**
+	 * Render the scene into packed ARGB pixels, row after row:
+	 * pixel (x,y) is pixels[y*width + x].
+	 * The bands are painted on the common fork-join pool. The triangles
+	 * are only read while painting; each band keeps its own scan state
+	 * and writes its own rows. Nothing is allocated per pixel.
+	 */
+	public void paint(int[] pixels, int width, int height) {
+		paint(pixels, width, height, null, null);
+	}
+
+	/**
+	 * Render only part of the scene into packed ARGB pixels, as paint(pixels, width, height)
+	 * would: the pixels from[y] <= x < to[y] of each row y. The others are left as they were.
+	 * Null arrays stand for whole rows.
+	 */
+	public void paint(int[] pixels, int width, int height, int[] from, int[] to) {
+		if (pixels.length < width * height) throw new IllegalArgumentException("need " + width * height + " pixels");
+		if ((from == null) != (to == null) || from != null && (from.length < height || to.length < height)) {
+			throw new IllegalArgumentException("need a range of pixels for each of " + height + " rows");
+		}
+		if (height > EdgeTable.MAX_ROWS) throw new IllegalArgumentException("at most " + EdgeTable.MAX_ROWS + " rows");
+		int count = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * BANDS_PER_THREAD, height / MIN_BAND_ROWS));
+		if (bands.length != count) {
+			bands = new Band[count];
+			for (int i=0; i < count; ++i) {
+				bands[i] = new Band();
+			}
+		}
+		int rows = (height + count - 1) / count;
+		if (count == 1) bands[0].paint(table, pixels, width, 0, height, from, to);
+		else IntStream.range(0, count).parallel().forEach(
+				i -> bands[i].paint(table, pixels, width, Math.min(height, i * rows), Math.min(height, (i+1) * rows), from, to));
+	}
 
+	/**
+	 * The scan state of one band of rows: the triangles the scan line
+	 * crosses and where, so the triangles themselves are never changed.
+	 * A band is painted by one thread at a time.
+	 */
+	private static class Band {
+		// line: the triangles the scan line crosses, by their number in the
+		//     edge table, ordered by minimum x along the line. scan holds where the line
+		//     crosses line[i] at scan[i*SCAN_SIZE] (see Triangle.SCAN_MIN_X).
+		// waiting: the triangles of "line" from index "waiting" on, whose minX
+		//     hasn't been reached yet.
+		// current: the triangles of "line" (by index in "line") which may be visible
+		//     at the current x, ordered by depth there: current[0] is in front.
+		//     depth[i] is the Z of current[i].
+		private int[] line = new int[16];
+		private double[] scan = new double[16 * Triangle.SCAN_SIZE];
+		private int size, waiting;
+		private int[] current = new int[16];
+		private double[] depth = new double[16];
+		private int active;
+		private final double[] moving = new double[Triangle.SCAN_SIZE];
+
+		/**
+		 * Paint the rows from y0 up to y1, or the pixels from[y] <= x < to[y]
+		 * of them if the arrays aren't null. Rows with no pixels to paint
+		 * are skipped.
+		 */
+		void paint(EdgeTable table, int[] pixels, int width, int y0, int y1, int[] from, int[] to) {
+			Triangle[] tris = table.getTriangles();
+			int reached = -1; // "line" has the triangles that start on rows up to this one
+			for (int y=y0; y < y1; ++y) {
+				int x0 = from == null ? 0 : Math.max(0, from[y]);
+				int x1 = to == null ? width : Math.min(width, to[y]);
+				if (x0 >= x1) continue;
+				if (reached < 0 || y - reached > EdgeTable.STRIP_ROWS) {
+					// start over with the triangles from above which may reach this row:
+					// those reaching the top of its strip, and those starting in the strip since.
+					// The ones that end before y are dropped by the scan.
+					size = 0;
+					int strip = y / EdgeTable.STRIP_ROWS;
+					addAll(table.getCrossing(strip), table.getCrossingSize(strip));
+					reached = strip * EdgeTable.STRIP_ROWS - 1;
+				}
+				// add the new triangles the scan line has reached.
+				while (reached < y) {
+					++reached;
+					addAll(table.getStarting(reached), table.getStartingSize(reached));
+				}
+				// keep the triangles the scan line still crosses, with where it crosses them.
+				// The others are done with for good.
+				int kept = 0;
+				for (int i=0; i < size; ++i) {
+					if (tris[line[i]].scan(y, scan, kept * Triangle.SCAN_SIZE)) line[kept++] = line[i];
 				}
-				// Record what the "x" value is and then sort the current triangles
-				keyZ.setScanX(x);
-				// TODO: we did the first part for you already.  Just sort the "current" triangles.
-				current.sort();
-				// Repeatedly remove the first "current" triangle if it ended (MaxX) 
-				// before the current x value.
-				// Place them back in "line" as being done with for now.
-				// As before, because of sorting, as soon as we find one to keep, we can stop.
-				// TODO
-				while (!current.isEmpty() && current.getFirst().getMaxX() <= x) {
-					line.add(current.removeFirst());
+				size = kept;
+				sortByMinX();
+				paintRow(tris, pixels, y * width, width, x0, x1);
+			}
+		}
 
+		/**
+		 * Add the first n of the given triangles to the end of "line".
+		 */
+		private void addAll(int[] tris, int n) {
+			if (size + n > line.length) {
+				int length = Math.max(size + n, line.length * 2);
+				line = Arrays.copyOf(line, length);
+				scan = Arrays.copyOf(scan, length * Triangle.SCAN_SIZE);
+			}
+			if (n > 0) System.arraycopy(tris, 0, line, size, n);
+			size += n;
+		}
 
+		/**
+		 * Draw a scan line a span at a time: a span is a run of pixels
+		 * in which the same triangle stays in front, so the current
+		 * triangles are only ordered again where that may change.
+		 * Only the pixels from x0 up to x1 are written, but the spans
+		 * always start from the left, so they come out the same as
+		 * when the whole row is painted.
+		 */
+		private void paintRow(Triangle[] tris, int[] pixels, int row, int width, int x0, int x1) {
+			waiting = 0;
+			active = 0;
+			int x = 0;
+			while (x < x1) {
+				// Move the "waiting" triangles whose start (minX) is at or before
+				// pixel x to "current". As soon as one isn't ready, we can stop.
+				while (waiting < size && minX(waiting) <= x) {
+					if (active == current.length) {
+						current = Arrays.copyOf(current, active * 2);
+						depth = Arrays.copyOf(depth, active * 2);
+					}
+					current[active++] = waiting++;
 				}
+				// Drop the "current" triangles that ended (MaxX) at or before x.
+				int kept = 0;
+				for (int i=0; i < active; ++i) {
+					if (maxX(current[i]) > x) current[kept++] = current[i];
+				}
+				active = kept;
 				// draw some pixels: either a lot of black ones (if no current) or
-				// one pixel from the current triangle.
-				if (current.isEmpty()) {
-					int supx = d.width;
-					if (!waiting.isEmpty() && waiting.getFirst().getMinX() < supx) {
-						supx = (int)waiting.getFirst().getMinX();
+				// a span of the front triangle.
+				if (active == 0) {
+					int supx = width;
+					if (waiting < size && minX(waiting) < supx) {
+						supx = (int)minX(waiting);
 					}
-					g.setColor(BACKGROUND);
-					g.drawLine(x, y, supx, y);
-					x = supx;
+					int fill = Math.max(x, x0), end = Math.min(supx + 1, x1);
+					if (fill < end) Arrays.fill(pixels, row + fill, row + end, BACKGROUND_RGB);
+					x = supx + 1;
 				} else {
-					g.setColor(current.getFirst().getColor(x, Scene.BACKGROUND));
-					g.drawLine(x, y, x+1, y);
+					sortByDepth(x);
+					int end = spanEnd(x, width);
+					int front = current[0];
+					Triangle tri = tris[line[front]];
+					for (int px=Math.max(x, x0), stop=Math.min(end, x1); px < stop; ++px) {
+						pixels[row + px] = tri.getRGBAtZ((float)z(front, px), BACKGROUND_RGB);
+					}
+					x = end;
 				}
 			}
-
-			// Remove all current and waiting triangles to the "line" group
-			while (!current.isEmpty()) {
-				line.add(current.removeFirst());
-			}
-			while (!waiting.isEmpty()) {
-				line.add(waiting.removeFirst());
-			}	
-
-
 		}
 
+		private double minX(int i) {
+			return scan[i * Triangle.SCAN_SIZE + Triangle.SCAN_MIN_X];
+		}
 
-
-		// Remove all active (line) triangles or remaining input triangles
-		// back to "all".
-
-		while (!line.isEmpty()) {
-			all.add(line.removeFirst());
+		private double maxX(int i) {
+			return scan[i * Triangle.SCAN_SIZE + Triangle.SCAN_MAX_X];
 		}
 
+		private double z(int i, double x) {
+			int at = i * Triangle.SCAN_SIZE;
+			return Triangle.getZ(scan[at + Triangle.SCAN_MIN_X], scan[at + Triangle.SCAN_MAX_X],
+					scan[at + Triangle.SCAN_FIRST_Z], scan[at + Triangle.SCAN_LAST_Z], x);
+		}
 
-		while (!input.isEmpty()) {
-			all.add(input.removeFirst());
+		private double slopeZ(int i) {
+			int at = i * Triangle.SCAN_SIZE;
+			return Triangle.getSlopeZ(scan[at + Triangle.SCAN_MIN_X], scan[at + Triangle.SCAN_MAX_X],
+					scan[at + Triangle.SCAN_FIRST_Z], scan[at + Triangle.SCAN_LAST_Z]);
 		}
 
+		/**
+		 * Order "line" by minimum x. It was in order on the last scan line,
+		 * with new triangles at the end, so insertion sort is close to linear.
+		 */
+		private void sortByMinX() {
+			int n = Triangle.SCAN_SIZE;
+			for (int i=1; i < size; ++i) {
+				double key = minX(i);
+				if (minX(i-1) <= key) continue;
+				int tri = line[i];
+				System.arraycopy(scan, i * n, moving, 0, n);
+				int j = i;
+				while (j > 0 && minX(j-1) > key) {
+					line[j] = line[j-1];
+					System.arraycopy(scan, (j-1) * n, scan, j * n, n);
+					--j;
+				}
+				line[j] = tri;
+				System.arraycopy(moving, 0, scan, j * n, n);
+			}
+		}
 
+		/**
+		 * Order the current triangles by their depth at x.
+		 * The sort is stable, so of triangles at the same depth the one
+		 * that was in front stays in front, and newer ones go behind.
+		 * They are nearly in order already, so this is close to linear.
+		 */
+		private void sortByDepth(int x) {
+			for (int i=0; i < active; ++i) {
+				int t = current[i];
+				double z = z(t, x);
+				int j = i;
+				while (j > 0 && depth[j-1] > z) {
+					current[j] = current[j-1];
+					depth[j] = depth[j-1];
+					--j;
+				}
+				current[j] = t;
+				depth[j] = z;
+			}
+		}
 
+		/**
+		 * Return the first pixel after x at which the front triangle may change:
+		 * where the next waiting triangle starts, where the front one ends, or
+		 * where another current triangle comes closer than the front one
+		 * (Z is linear in x along the scan line, so that is one division).
+		 * The span stops before the crossing pixel, which is ordered again,
+		 * so rounding in the division does not move the crossing.
+		 */
+		private int spanEnd(int x, int width) {
+			double end = width;
+			if (waiting < size && Math.ceil(minX(waiting)) < end) {
+				end = Math.ceil(minX(waiting));
+			}
+			int front = current[0];
+			if (Math.ceil(maxX(front)) < end) {
+				end = Math.ceil(maxX(front));
+			}
+			double slope = slopeZ(front);
+			for (int i=1; i < active; ++i) {
+				double closing = slope - slopeZ(current[i]);
+				if (closing > 0) {
+					double cross = Math.floor(x + (depth[i] - depth[0]) / closing);
+					if (cross < end) end = cross;
+				}
+			}
+			return (int)Math.max(x + 1, end);
+		}
 	}
 
 	/**
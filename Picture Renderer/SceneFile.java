@@ -0,0 +1,461 @@
+import java.awt.Color;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Read and write scene files, as text or in a compact binary form.
+ *
+ * Text scenes have a triangle per line, as Triangle.toString writes it.
+ * They are read from a memory-mapped file, and lines of the usual form,
+ * Triangle((x,y,z);(x,y,z);(x,y,z);rgb), are parsed straight from the
+ * bytes. Any other line is passed to Triangle.fromString, which accepts
+ * it or says what is wrong with it.
+ *
+ * Binary scenes start with a header of four ints: the bytes "TRIS",
+ * VERSION, the size of a coordinate (4 for float or 8 for double), and
+ * the number of triangles. Then come all the coordinates, nine per
+ * triangle (x, y and z of each point), then all the colors as RGB ints.
+ * Everything is big-endian, as DataOutputStream writes it.
+ *
+ * Usage: java SceneFile [-float] IN OUT
+ *   converts the scene IN from text to binary, or from binary to text.
+ *   -float stores coordinates as floats: 40 bytes per triangle instead
+ *   of 76, but the coordinates are rounded.
+ */
+public class SceneFile {
+	public static final int MAGIC = 'T' << 24 | 'R' << 16 | 'I' << 8 | 'S';
+	public static final int VERSION = 1;
+	private static final int HEADER = 16;
+
+	// Text is mapped this much at a time, ending at the last full line;
+	// binary scenes this many triangles at a time.
+	private static final int WINDOW = 1 << 30;
+	private static final int BATCH = 1 << 20;
+
+	private SceneFile() {}
+
+	/**
+	 * Return a scene of the triangles in a file, text or binary.
+	 */
+	public static Scene load(File file) throws IOException, FormatException {
+		Scene scene = new Scene();
+		read(file, scene::add);
+		return scene;
+	}
+
+	/**
+	 * Pass every triangle of a scene file, text or binary, to the sink in order.
+	 */
+	public static void read(File file, Consumer<Triangle> sink) throws IOException, FormatException {
+		if (isBinary(file)) readBinary(file, sink);
+		else readText(file, sink);
+	}
+
+	/**
+	 * Return whether a file starts as a binary scene does.
+	 */
+	public static boolean isBinary(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			return in.length() >= HEADER && in.readInt() == MAGIC;
+		}
+	}
+
+	/**
+	 * Pass every triangle of a text scene to the sink in order.
+	 * Blank lines are skipped.
+	 */
+	public static void readText(File file, Consumer<Triangle> sink) throws IOException, FormatException {
+		TextParser parser = new TextParser();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			long pos = 0;
+			while (pos < size) {
+				int length = (int)Math.min(size - pos, WINDOW);
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+				int end = length;
+				if (pos + length < size) {
+					while (end > 0 && buf.get(end - 1) != '\n') --end;
+					if (end == 0) throw new IOException(file + ": line longer than " + WINDOW + " bytes at byte " + pos);
+				}
+				int at = 0;
+				while (at < end) {
+					int eol = at;
+					while (eol < end && buf.get(eol) != '\n') ++eol;
+					int stop = eol;
+					if (stop > at && buf.get(stop - 1) == '\r') --stop;
+					if (!parser.isBlank(buf, at, stop)) sink.accept(parser.parse(buf, at, stop));
+					at = eol + 1;
+				}
+				pos += end;
+			}
+		}
+	}
+
+	/**
+	 * Parses lines of text scenes from bytes, only making
+	 * a string for a line, or a number, that isn't of the usual form.
+	 */
+	private static class TextParser {
+		private static final byte[] PREFIX = "Triangle(".getBytes(StandardCharsets.US_ASCII);
+		private static final double[] POWERS = new double[23];
+		static {
+			POWERS[0] = 1;
+			for (int i=1; i < POWERS.length; ++i) {
+				POWERS[i] = POWERS[i-1] * 10;
+			}
+		}
+
+		// FIVES holds 5^q for SMALLEST_POWER <= q <= LARGEST_POWER to 128 bits,
+		// shifted to set the top bit: the high then the low 64 bits. Powers below
+		// 1 are rounded up, as the Eisel-Lemire algorithm (see lemire()) needs.
+		private static final int SMALLEST_POWER = -342, LARGEST_POWER = 308;
+		private static final long[] FIVES = new long[2 * (LARGEST_POWER - SMALLEST_POWER + 1)];
+		static {
+			BigInteger five = BigInteger.valueOf(5);
+			for (int q=SMALLEST_POWER; q <= LARGEST_POWER; ++q) {
+				BigInteger c;
+				if (q >= 0) {
+					c = five.pow(q);
+					int shift = 128 - c.bitLength();
+					c = shift >= 0 ? c.shiftLeft(shift) : c.shiftRight(-shift);
+				} else {
+					BigInteger p = five.pow(-q);
+					int z = p.bitLength();
+					c = BigInteger.ONE.shiftLeft(q >= -27 ? z + 127 : 2 * z + 128).divide(p).add(BigInteger.ONE);
+					c = c.shiftRight(Math.max(0, c.bitLength() - 128));
+				}
+				FIVES[2 * (q - SMALLEST_POWER)] = c.shiftRight(64).longValue();
+				FIVES[2 * (q - SMALLEST_POWER) + 1] = c.longValue();
+			}
+		}
+
+		private ByteBuffer buf;
+		private int at, end;
+		private final double[] coords = new double[9];
+		private int rgb;
+		private byte[] text = new byte[64];
+
+		boolean isBlank(ByteBuffer buf, int from, int to) {
+			for (int i=from; i < to; ++i) {
+				if (buf.get(i) > ' ') return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Return the triangle on the line from "from" up to "to".
+		 */
+		Triangle parse(ByteBuffer buf, int from, int to) throws FormatException {
+			this.buf = buf;
+			at = from;
+			end = to;
+			if (!line()) {
+				if (to - from > text.length) text = new byte[to - from];
+				for (int i=from; i < to; ++i) {
+					text[i - from] = buf.get(i);
+				}
+				return Triangle.fromString(new String(text, 0, to - from, StandardCharsets.ISO_8859_1));
+			}
+			return new Triangle(new Point3D(coords[0], coords[1], coords[2]),
+					new Point3D(coords[3], coords[4], coords[5]),
+					new Point3D(coords[6], coords[7], coords[8]), new Color(rgb));
+		}
+
+		/**
+		 * Parse a line of the usual form into coords and rgb,
+		 * or return false if it isn't of that form.
+		 */
+		private boolean line() {
+			for (byte b : PREFIX) {
+				if (!next(b)) return false;
+			}
+			for (int i=0; i < 3; ++i) {
+				if (i > 0 && !next(';')) return false;
+				boolean parens = next('(');
+				if (!number(3*i) || !next(',') || !number(3*i+1) || !next(',') || !number(3*i+2)) return false;
+				if (parens && !next(')')) return false;
+			}
+			return next(';') && color() && next(')') && at == end;
+		}
+
+		private boolean next(int b) {
+			if (at < end && buf.get(at) == b) {
+				++at;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean digit() {
+			return at < end && buf.get(at) >= '0' && buf.get(at) <= '9';
+		}
+
+		/**
+		 * Parse a number as Double.toString writes it into coords[i].
+		 * Its first 19 significant digits are read as an unsigned long,
+		 * and if that is all of them the double nearest that times a power
+		 * of ten is worked out exactly: with one multiplication or division
+		 * of doubles if both are small enough (Clinger's fast path), or else
+		 * by lemire(). Any other number is passed to Double.parseDouble.
+		 */
+		private boolean number(int i) {
+			int start = at;
+			boolean negative = next('-');
+			long mantissa = 0;
+			int digits = 0, exponent = 0;
+			if (!digit()) return false;
+			while (digit()) {
+				if (digits < 19) {
+					mantissa = mantissa * 10 + (buf.get(at) - '0');
+					if (mantissa != 0) ++digits;
+				} else {
+					++digits;
+					++exponent;
+				}
+				++at;
+			}
+			if (next('.')) {
+				if (!digit()) return false;
+				while (digit()) {
+					if (digits < 19) {
+						mantissa = mantissa * 10 + (buf.get(at) - '0');
+						--exponent;
+						if (mantissa != 0) ++digits;
+					} else ++digits;
+					++at;
+				}
+			}
+			if (next('E') || next('e')) {
+				boolean negativeE = next('-');
+				if (!digit()) return false;
+				int e = 0;
+				while (digit()) {
+					if (e < 100000) e = e * 10 + (buf.get(at) - '0');
+					++at;
+				}
+				exponent += negativeE ? -e : e;
+			}
+			double value = Double.NaN;
+			if (digits <= 19) {
+				if (mantissa == 0) value = 0;
+				else if (mantissa > 0 && mantissa <= 1L << 53 && exponent >= -22 && exponent <= 22) {
+					value = exponent < 0 ? mantissa / POWERS[-exponent] : mantissa * POWERS[exponent];
+				} else value = lemire(mantissa, exponent);
+			}
+			if (!Double.isNaN(value)) {
+				coords[i] = negative ? -value : value;
+				return true;
+			}
+			int n = at - start;
+			if (n > text.length) text = new byte[n];
+			for (int j=0; j < n; ++j) {
+				text[j] = buf.get(start + j);
+			}
+			coords[i] = Double.parseDouble(new String(text, 0, n, StandardCharsets.ISO_8859_1));
+			return true;
+		}
+
+		/**
+		 * Return the double nearest w * 10^q, for a nonzero unsigned w,
+		 * or NaN if that can't be told quickly. This is the algorithm of
+		 * D. Lemire, "Number Parsing at a Gigabyte per Second" (2021),
+		 * after M. Eisel: the product of w and the top 64 or 128 bits of 5^q
+		 * has the 53 bits the double needs, unless it is too close to halfway
+		 * between two doubles, or the double would be subnormal or infinite.
+		 */
+		private static double lemire(long w, int q) {
+			if (q < SMALLEST_POWER || q > LARGEST_POWER) return Double.NaN;
+			int index = 2 * (q - SMALLEST_POWER);
+			long exponent = ((152170 + 65536) * (long)q >> 16) + 1024 + 63;
+			int lz = Long.numberOfLeadingZeros(w);
+			w <<= lz;
+			long upper = multiplyHigh(w, FIVES[index]);
+			long lower = w * FIVES[index];
+			if ((upper & 0x1FF) == 0x1FF && Long.compareUnsigned(lower + w, lower) < 0) {
+				// not enough bits to round: take in the low 64 bits of 5^q as well
+				long low = w * FIVES[index + 1];
+				long middle = lower + multiplyHigh(w, FIVES[index + 1]);
+				if (Long.compareUnsigned(middle, lower) < 0) ++upper;
+				if (middle + 1 == 0 && (upper & 0x1FF) == 0x1FF && Long.compareUnsigned(low + w, low) < 0) return Double.NaN;
+				lower = middle;
+			}
+			long upperBit = upper >>> 63;
+			long mantissa = upper >>> (upperBit + 9);
+			lz += 1 ^ (int)upperBit;
+			if (lower == 0 && (upper & 0x1FF) == 0 && (mantissa & 3) == 1) return Double.NaN; // halfway
+			mantissa += mantissa & 1;
+			mantissa >>>= 1;
+			if (mantissa >= 1L << 53) {
+				mantissa = 1L << 52;
+				--lz;
+			}
+			mantissa &= ~(1L << 52);
+			long biased = exponent - lz;
+			if (biased < 1 || biased > 2046) return Double.NaN;
+			return Double.longBitsToDouble(mantissa | biased << 52);
+		}
+
+		/**
+		 * Return the high 64 bits of the 128-bit product of two unsigned longs.
+		 */
+		private static long multiplyHigh(long a, long b) {
+			return Math.multiplyHigh(a, b) + (a >> 63 & b) + (b >> 63 & a);
+		}
+
+		/**
+		 * Parse a color as Color.getRGB writes it, a decimal int, into rgb.
+		 */
+		private boolean color() {
+			boolean negative = next('-');
+			if (!digit() || buf.get(at) == '0' && at + 1 < end && buf.get(at + 1) >= '0' && buf.get(at + 1) <= '9') return false;
+			long value = 0;
+			while (digit()) {
+				value = value * 10 + (buf.get(at++) - '0');
+				if (value > 1L << 31) return false;
+			}
+			if (negative) value = -value;
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return false;
+			rgb = (int)value;
+			return true;
+		}
+	}
+
+	/**
+	 * Pass every triangle of a binary scene to the sink in order.
+	 */
+	public static void readBinary(File file, Consumer<Triangle> sink) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER));
+			if (header.limit() < HEADER || header.getInt(0) != MAGIC) throw new IOException(file + ": not a binary scene");
+			if (header.getInt(4) != VERSION) throw new IOException(file + ": binary scene version " + header.getInt(4) + ", not " + VERSION);
+			int precision = header.getInt(8);
+			if (precision != 4 && precision != 8) throw new IOException(file + ": coordinates of " + precision + " bytes");
+			int count = header.getInt(12);
+			long coords = (long)count * 9 * precision;
+			if (count < 0 || channel.size() != HEADER + coords + (long)count * 4) {
+				throw new IOException(file + ": " + channel.size() + " bytes is the wrong size for " + count + " triangles");
+			}
+			double[] c = new double[9];
+			for (int first=0; first < count; first += BATCH) {
+				int n = Math.min(BATCH, count - first);
+				ByteBuffer points = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + (long)first * 9 * precision, (long)n * 9 * precision);
+				ByteBuffer colors = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + coords + (long)first * 4, (long)n * 4);
+				for (int i=0; i < n; ++i) {
+					for (int j=0; j < 9; ++j) {
+						int at = (i * 9 + j) * precision;
+						c[j] = precision == 4 ? points.getFloat(at) : points.getDouble(at);
+					}
+					sink.accept(new Triangle(new Point3D(c[0], c[1], c[2]), new Point3D(c[3], c[4], c[5]),
+							new Point3D(c[6], c[7], c[8]), new Color(colors.getInt(i * 4))));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes a binary scene, a triangle at a time. The colors are kept
+	 * until close(), which writes them after the coordinates.
+	 */
+	public static class BinaryWriter implements Consumer<Triangle>, Closeable {
+		private final File file;
+		private final boolean floats;
+		private final DataOutputStream out;
+		private int[] colors = new int[1024];
+		private int count;
+
+		/**
+		 * Start writing a binary scene file, with coordinates as floats or doubles.
+		 */
+		public BinaryWriter(File file, boolean floats) throws IOException {
+			this.file = file;
+			this.floats = floats;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(floats ? 4 : 8);
+			out.writeInt(0); // the count, written at close()
+		}
+
+		/**
+		 * Write a triangle.
+		 */
+		public void accept(Triangle t) {
+			if (count == Integer.MAX_VALUE) throw new IllegalStateException("too many triangles");
+			try {
+				for (int i=0; i < 3; ++i) {
+					Point3D p = t.getPoint(i);
+					if (floats) {
+						out.writeFloat((float)p.x);
+						out.writeFloat((float)p.y);
+						out.writeFloat((float)p.z);
+					} else {
+						out.writeDouble(p.x);
+						out.writeDouble(p.y);
+						out.writeDouble(p.z);
+					}
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (count == colors.length) colors = Arrays.copyOf(colors, count * 2);
+			colors[count++] = t.getColor().getRGB();
+		}
+
+		/**
+		 * Write the colors and the count of triangles, and close the file.
+		 */
+		public void close() throws IOException {
+			try {
+				for (int i=0; i < count; ++i) {
+					out.writeInt(colors[i]);
+				}
+			} finally {
+				out.close();
+			}
+			try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+				f.seek(12);
+				f.writeInt(count);
+			}
+		}
+	}
+
+	/**
+	 * Convert a scene file from text to binary, or from binary to text.
+	 */
+	public static void main(String[] args) throws IOException, FormatException {
+		boolean floats = args.length == 3 && args[0].equals("-float");
+		if (args.length != (floats ? 3 : 2)) throw new IllegalArgumentException("usage: java SceneFile [-float] IN OUT");
+		File in = new File(args[args.length - 2]), out = new File(args[args.length - 1]);
+		long start = System.nanoTime();
+		if (isBinary(in)) {
+			final PrintWriter pw = new PrintWriter(out, "US-ASCII");
+			try {
+				readBinary(in, t -> pw.println(t));
+			} finally {
+				pw.close();
+			}
+			if (pw.checkError()) throw new IOException(out + ": could not write");
+		} else {
+			try (BinaryWriter w = new BinaryWriter(out, floats)) {
+				readText(in, w);
+			}
+		}
+		System.out.println(String.format(Locale.ROOT, "%s -> %s in %.1f ms", in, out, (System.nanoTime() - start) / 1e6));
+	}
+}
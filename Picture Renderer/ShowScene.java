@@ -1,6 +1,5 @@
 import java.awt.Color;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
@@ -18,13 +17,7 @@ public class ShowScene {
 		final Scene scene = new Scene();
 		if (args.length > 0) {
 			for (String arg : args) {
-				BufferedReader br = new BufferedReader(new FileReader(arg));
-				String ts;
-				while ((ts = br.readLine()) != null) {
-					Triangle tri = Triangle.fromString(ts);
-					scene.add(tri);
-				}
-				br.close();
+				SceneFile.read(new File(arg), scene::add);
 			}
 		} else {
 			scene.add(
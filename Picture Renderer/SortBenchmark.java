@@ -0,0 +1,126 @@
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Time the ways a Triangle.Group can be sorted, over groups of 8 to 2^20
+ * triangles keyed by minimum y, and print where merge and radix sort
+ * start to beat insertion sort.
+ *
+ * Groups are either in random order, or nearly sorted: in order but for
+ * one triangle in a hundred moved a few places, the way a scan line's
+ * triangles are from one line to the next. Every pass sorts the same
+ * group from the same order, which is put back untimed between passes.
+ * A size is timed for as many passes as fit in the time budget after a
+ * warm-up of the same length. Insertion sort of random groups is
+ * quadratic, so it stops once a pass takes more than a second.
+ *
+ * Usage: java SortBenchmark [-max N] [-ms MILLIS]
+ */
+public class SortBenchmark {
+	private static final Triangle.Key minY = new Triangle.Key() {
+		public double apply(Triangle t) {
+			return t.getMinY();
+		}
+	};
+
+	private static final long TOO_SLOW = 1_000_000_000L;
+
+	static volatile double sink;
+
+	/**
+	 * Return n small triangles in random order, or nearly sorted by minimum y.
+	 */
+	private static Triangle[] triangles(int n, boolean nearly) {
+		Random random = new Random(n);
+		double[] ys = new double[n];
+		for (int i=0; i < n; ++i) {
+			ys[i] = random.nextDouble() * 1080;
+		}
+		if (nearly) {
+			Arrays.sort(ys);
+			for (int i=0; i < n / 100; ++i) {
+				int a = random.nextInt(n), b = Math.min(n - 1, a + random.nextInt(8));
+				double y = ys[a]; ys[a] = ys[b]; ys[b] = y;
+			}
+		}
+		Triangle[] tris = new Triangle[n];
+		for (int i=0; i < n; ++i) {
+			double x = random.nextDouble() * 1920, y = ys[i];
+			tris[i] = new Triangle(new Point3D(x, y, 0.5), new Point3D(x + 10, y + 5, 0.5),
+					new Point3D(x + 3, y + 12, 0.5), Color.WHITE);
+		}
+		return tris;
+	}
+
+	/**
+	 * Return the nanoseconds per triangle of sorting the triangles,
+	 * in the given order, with the strategy.
+	 */
+	private static double time(Triangle[] tris, Triangle.Group.Strategy s, long millis) {
+		Triangle.Group g = new Triangle.Group(minY);
+		long nanos = 0, passes = 0;
+		for (int warm=0; warm < 2; ++warm) {
+			nanos = passes = 0;
+			do {
+				while (!g.isEmpty()) g.removeFirst();
+				for (Triangle t : tris) g.add(t);
+				long start = System.nanoTime();
+				g.sort(s);
+				nanos += System.nanoTime() - start;
+				++passes;
+				if (nanos > TOO_SLOW) break;
+			} while (nanos < millis * 1_000_000);
+		}
+		sink += g.getFirst().getMinY();
+		while (!g.isEmpty()) g.removeFirst();
+		return (double)nanos / passes / tris.length;
+	}
+
+	public static void main(String[] args) {
+		int max = 1 << 20;
+		long millis = 100;
+		for (int i=0; i < args.length; ++i) {
+			if (args[i].equals("-max") && i+1 < args.length) max = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-ms") && i+1 < args.length) millis = Long.parseLong(args[++i]);
+			else throw new IllegalArgumentException("usage: java SortBenchmark [-max N] [-ms MILLIS]");
+		}
+		Triangle.Group.Strategy[] strategies = Triangle.Group.Strategy.values();
+		for (boolean nearly : new boolean[] {true, false}) {
+			System.out.println(nearly ? "nearly sorted" : "random order");
+			System.out.printf("%10s", "size");
+			for (Triangle.Group.Strategy s : strategies) System.out.printf(" %12s", s.name().toLowerCase(Locale.ROOT));
+			System.out.println("  (ns per triangle)");
+			boolean[] slow = new boolean[strategies.length];
+			int[] crossover = new int[strategies.length];
+			for (int n=8; n <= max; n *= 2) {
+				Triangle[] tris = triangles(n, nearly);
+				double[] ns = new double[strategies.length];
+				System.out.printf("%10d", n);
+				for (int i=0; i < strategies.length; ++i) {
+					if (slow[i]) {
+						ns[i] = Double.NaN;
+						System.out.printf(" %12s", "-");
+						continue;
+					}
+					ns[i] = time(tris, strategies[i], millis);
+					slow[i] = ns[i] * n > TOO_SLOW;
+					System.out.printf(Locale.ROOT, " %12.1f", ns[i]);
+				}
+				System.out.println();
+				// a strategy crosses over at the first size from which it beats insertion sort
+				for (int i=1; i < strategies.length; ++i) {
+					if (!(ns[i] < ns[0]) && !Double.isNaN(ns[0])) crossover[i] = 0;
+					else if (crossover[i] == 0) crossover[i] = n;
+				}
+			}
+			for (int i=1; i < strategies.length; ++i) {
+				String name = strategies[i].name().toLowerCase(Locale.ROOT);
+				if (crossover[i] == 0) System.out.println(name + " never beats insertion up to " + max);
+				else System.out.println(name + " beats insertion from " + crossover[i] + " triangles on");
+			}
+			System.out.println();
+		}
+	}
+}
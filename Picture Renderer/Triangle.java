@@ -1,9 +1,11 @@
 import java.awt.Color;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 public class Triangle {
 	private Point3D p1, p2, p3;
 	private final Color color;
+	private final int rgb;
 	
 	/**
 	 * Return a triangle with the given points and color.
@@ -13,6 +15,7 @@ public class Triangle {
 		this.p2 = p2;
 		this.p3 = p3;
 		color = c;
+		rgb = c.getRGB();
 	}
 	
 	/**
@@ -56,31 +59,53 @@ public class Triangle {
 	private double minX, maxX;
 	private double firstZ, lastZ;
 	
-	private boolean checkLine(double scanY, Point3D a, Point3D b, boolean started) {
+	/**
+	 * Where a scan line crosses a triangle, as scan() stores it:
+	 * the smallest and largest x, and the Z at each of them.
+	 */
+	public static final int SCAN_MIN_X = 0, SCAN_MAX_X = 1, SCAN_FIRST_Z = 2, SCAN_LAST_Z = 3, SCAN_SIZE = 4;
+	
+	private static boolean checkLine(double scanY, Point3D a, Point3D b, boolean started, double[] scan, int at) {
 		double da = a.y - scanY;
 		double db = b.y - scanY;
 		if (da < 0 && db < 0 || da > 0 && db > 0) return started;
+		if (da == 0 && db == 0) return started; // on the line: its ends are on the other edges
 		double x = interpolate(a.y,b.y,a.x,b.x,scanY);
 		double z = interpolate(a.y,b.y,a.z,b.z,scanY);
-		/*if (Double.toString(scanY).endsWith("0.0")) {
-			System.out.println("For Y = " + scanY + ", a = " + a + ", b = " + b + ", x = " + x + ", z = " + z);
-		}*/
 		if (!started) {
-			minX = maxX = x;
-			firstZ = lastZ = z;
-		} else if (x < minX) {
-			minX = x; firstZ = z;
-		} else if (x > maxX) {
-			maxX = x; lastZ = z;
+			scan[at+SCAN_MIN_X] = scan[at+SCAN_MAX_X] = x;
+			scan[at+SCAN_FIRST_Z] = scan[at+SCAN_LAST_Z] = z;
+		} else if (x < scan[at+SCAN_MIN_X]) {
+			scan[at+SCAN_MIN_X] = x; scan[at+SCAN_FIRST_Z] = z;
+		} else if (x > scan[at+SCAN_MAX_X]) {
+			scan[at+SCAN_MAX_X] = x; scan[at+SCAN_LAST_Z] = z;
 		}
 		return true;
 	}
 	
+	/**
+	 * Find where the scan line at y crosses this triangle, without
+	 * changing the triangle, so any number of threads can scan it at once.
+	 * The crossing goes in scan[at] to scan[at+SCAN_SIZE-1] (see SCAN_MIN_X).
+	 * Return false, leaving scan as it was, if the line misses the triangle.
+	 */
+	public boolean scan(double y, double[] scan, int at) {
+		boolean started = checkLine(y,p3,p1,false,scan,at);
+		started = checkLine(y,p2,p3,started,scan,at);
+		return checkLine(y,p1,p2,started,scan,at);
+	}
+	
 	/**
 	 * Set the current scan line.
 	 */
 	public boolean setScan(double y) {
-		return checkLine(y,p1,p2,checkLine(y,p2,p3,checkLine(y,p3,p1,false)));
+		double[] s = new double[SCAN_SIZE];
+		if (!scan(y, s, 0)) return false;
+		minX = s[SCAN_MIN_X];
+		maxX = s[SCAN_MAX_X];
+		firstZ = s[SCAN_FIRST_Z];
+		lastZ = s[SCAN_LAST_Z];
+		return true;
 	}
 	
 	/**
@@ -98,10 +123,35 @@ public class Triangle {
 	 * of this triangle (the closest point)
 	 */
 	public double getZ(double x) {
+		return getZ(minX, maxX, firstZ, lastZ, x);
+	}
+	
+	/**
+	 * Return the Z coordinate at x of a scan line crossing
+	 * from (minX, firstZ) to (maxX, lastZ).
+	 */
+	public static double getZ(double minX, double maxX, double firstZ, double lastZ, double x) {
 		if (minX == maxX) return firstZ;
 		return interpolate(minX,maxX,firstZ,lastZ,x);
 	}
 	
+	/**
+	 * Return how much the Z coordinate changes per unit of X
+	 * along the current scan line.
+	 */
+	public double getSlopeZ() {
+		return getSlopeZ(minX, maxX, firstZ, lastZ);
+	}
+	
+	/**
+	 * Return how much Z changes per unit of X along a scan line crossing
+	 * from (minX, firstZ) to (maxX, lastZ).
+	 */
+	public static double getSlopeZ(double minX, double maxX, double firstZ, double lastZ) {
+		if (minX == maxX) return 0;
+		return (lastZ - firstZ)/(maxX - minX);
+	}
+	
 	/**
 	 * Return color for this triangle moving toward the background color.
 	 */
@@ -117,6 +167,27 @@ public class Triangle {
 		return result;
 	}
 	
+	/**
+	 * Return the same color as getColor(x, background), packed as an ARGB int.
+	 * This does not allocate, so it can be called for every pixel.
+	 */
+	public int getRGB(double x, int background) {
+		return getRGBAtZ((float)getZ(x), background);
+	}
+	
+	/**
+	 * Return the color of this triangle at depth z, packed as an ARGB int.
+	 */
+	public int getRGBAtZ(float z, int background) {
+		if (z <= 0.0) return rgb;
+		if (z >= 1.0) return background;
+		float m = 1-z;
+		int r = (int)(((rgb >> 16) & 0xFF) * m + ((background >> 16) & 0xFF) * z);
+		int g = (int)(((rgb >> 8) & 0xFF) * m + ((background >> 8) & 0xFF) * z);
+		int b = (int)((rgb & 0xFF) * m + (background & 0xFF) * z);
+		return 0xFF000000 | r << 16 | g << 8 | b;
+	}
+	
 	@Override
 	public String toString() {
 		return "Triangle(" + p1 + ";" + p2 + ";" + p3 + ";" + color.getRGB() + ")";
@@ -159,6 +230,31 @@ public class Triangle {
 	 * Each triangle can be in at most one group.
 	 */
 	public static class Group {
+		/**
+		 * The ways a group can be sorted. Every one is stable: triangles
+		 * with the same key stay in the order they were in.
+		 * They order the same way unless a key is NaN.
+		 */
+		public static enum Strategy {
+			/**
+			 * Insertion sort: linear when the group is nearly in order already,
+			 * but quadratic when it isn't. This is what sort() and insert() use.
+			 */
+			INSERTION,
+			/**
+			 * Merge sort of the links themselves: n log n, and needs no more space.
+			 */
+			MERGE,
+			/**
+			 * Radix sort of the keys as 64-bit integers, a byte at a time:
+			 * linear, but needs arrays of the size of the group. NaN keys go last.
+			 */
+			RADIX
+		}
+
+		private static final int RADIX_BITS = 8;
+		private static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
 		private Triangle first;
 		private Triangle last;
 		private Key key;
@@ -358,6 +454,129 @@ public class Triangle {
 			sortForward(first);
 		}
 		
+		/**
+		 * Sort all the triangles in this group according to the key,
+		 * using the given strategy.
+		 */
+		public void sort(Strategy s) {
+			if (s == null) throw new IllegalArgumentException("sort strategy must not be null");
+			switch (s) {
+			case INSERTION: sortForward(first); break;
+			case MERGE: mergeSort(); break;
+			case RADIX: radixSort(); break;
+			}
+		}
+		
+		/**
+		 * Bottom-up merge sort: merge runs of 1, then 2, 4 and so on
+		 * along the next links, until a single run is left.
+		 * The prev links are only fixed at the end.
+		 */
+		private void mergeSort() {
+			Triangle list = first;
+			if (list == null) return;
+			for (int width = 1; ; width *= 2) {
+				Triangle p = list, tail = null;
+				list = null;
+				int merges = 0;
+				while (p != null) {
+					++merges;
+					// p starts a run of up to width, and q the run after it
+					Triangle q = p;
+					int pSize = 0;
+					while (pSize < width && q != null) {
+						++pSize;
+						q = q.next;
+					}
+					int qSize = width;
+					double pKey = key.apply(p);
+					double qKey = q == null ? 0 : key.apply(q);
+					while (pSize > 0 || qSize > 0 && q != null) {
+						Triangle t;
+						// take from q only if it is smaller, so equal keys stay in order
+						if (pSize > 0 && (qSize == 0 || q == null || !(qKey < pKey))) {
+							t = p;
+							p = p.next;
+							if (--pSize > 0) pKey = key.apply(p);
+						} else {
+							t = q;
+							q = q.next;
+							if (--qSize > 0 && q != null) qKey = key.apply(q);
+						}
+						if (tail == null) list = t;
+						else tail.next = t;
+						tail = t;
+					}
+					p = q;
+				}
+				tail.next = null;
+				if (merges == 1) break;
+			}
+			relink(list);
+		}
+		
+		/**
+		 * Least significant digit radix sort of the keys: the triangles and
+		 * their keys are copied into arrays, ordered by each byte of the key in
+		 * turn, from the last, and linked again in the order they end up in.
+		 * Bytes which all keys share, such as the exponent of keys in a small
+		 * range, are skipped.
+		 */
+		private void radixSort() {
+			int n = 0;
+			for (Triangle t = first; t != null; t = t.next) ++n;
+			if (n < 2) return;
+			Triangle[] from = new Triangle[n], to = new Triangle[n];
+			long[] keys = new long[n], toKeys = new long[n];
+			int i = 0;
+			for (Triangle t = first; t != null; t = t.next) {
+				from[i] = t;
+				keys[i++] = radixKey(key.apply(t));
+			}
+			int[] count = new int[RADIX_MASK + 2];
+			for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+				Arrays.fill(count, 0);
+				for (long k : keys) ++count[(int)(k >>> shift & RADIX_MASK) + 1];
+				if (count[(int)(keys[0] >>> shift & RADIX_MASK) + 1] == n) continue;
+				for (int d=0; d <= RADIX_MASK; ++d) count[d+1] += count[d];
+				for (int j=0; j < n; ++j) {
+					int at = count[(int)(keys[j] >>> shift & RADIX_MASK)]++;
+					to[at] = from[j];
+					toKeys[at] = keys[j];
+				}
+				Triangle[] tris = from; from = to; to = tris;
+				long[] k = keys; keys = toKeys; toKeys = k;
+			}
+			for (int j=1; j < n; ++j) from[j-1].next = from[j];
+			from[n-1].next = null;
+			relink(from[0]);
+		}
+		
+		/**
+		 * Return a key as a long which orders the same way as unsigned.
+		 * Positive keys get their sign bit set, and negative ones have
+		 * all bits flipped, so larger magnitudes come first. Adding 0.0
+		 * turns -0.0 into 0.0, which compares equal to it.
+		 */
+		private static long radixKey(double k) {
+			long bits = Double.doubleToLongBits(k + 0.0);
+			return bits < 0 ? ~bits : bits | Long.MIN_VALUE;
+		}
+		
+		/**
+		 * Make the given list, linked by next, the group:
+		 * set the prev links, first and last.
+		 */
+		private void relink(Triangle list) {
+			first = list;
+			Triangle prev = null;
+			for (Triangle t = list; t != null; t = t.next) {
+				t.prev = prev;
+				prev = t;
+			}
+			last = prev;
+		}
+		
 	}
 
 	}